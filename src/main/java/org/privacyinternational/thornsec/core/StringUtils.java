@@ -8,6 +8,9 @@
 package org.privacyinternational.thornsec.core;
 
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -47,6 +50,29 @@ public class StringUtils {
 		return toClean.replaceAll(invalidChars, "");
 	}
 
+	/**
+	 * Hashes some lines of text, as if they'd been written to a file one per
+	 * line
+	 *
+	 * @param lines the lines to hash
+	 * @return a hex-encoded SHA-256 hash
+	 */
+	public static String sha256(Iterable<String> lines) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+			for (final String line : lines) {
+				digest.update(line.getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) '\n');
+			}
+
+			return String.format("%064x", new BigInteger(1, digest.digest()));
+		} catch (NoSuchAlgorithmException e) {
+			// Every JVM has to support SHA-256, so we should never get here
+			throw new IllegalStateException(e);
+		}
+	}
+
 	/**
 	 * Loosely based on https://stackoverflow.com/a/12090634
 	 *
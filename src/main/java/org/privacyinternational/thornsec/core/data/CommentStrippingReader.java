@@ -0,0 +1,162 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.data;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A Reader which strips comments, both single (//) and multi line, out of our
+ * (not quite RFC compliant) JSON as it's being read.
+ *
+ * Unlike a regex, this knows about JSON strings, so a "//" inside a string
+ * (e.g. in a URL) is left alone.
+ */
+class CommentStrippingReader extends FilterReader {
+
+	private enum State {
+		JSON, STRING, STRING_ESCAPE, SLASH, LINE_COMMENT, BLOCK_COMMENT, BLOCK_COMMENT_STAR;
+	}
+
+	private State state;
+
+	// A character we've read, but not yet handed out
+	private int pending;
+
+	CommentStrippingReader(Reader in) {
+		super(in);
+
+		this.state = State.JSON;
+		this.pending = -1;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (this.pending != -1) {
+			final int c = this.pending;
+			this.pending = -1;
+			return c;
+		}
+
+		int c;
+		while ((c = in.read()) != -1) {
+			switch (this.state) {
+				case JSON:
+					if (c == '/') {
+						this.state = State.SLASH;
+						continue;
+					}
+					if (c == '"') {
+						this.state = State.STRING;
+					}
+					return c;
+				case STRING:
+					if (c == '\\') {
+						this.state = State.STRING_ESCAPE;
+					}
+					else if (c == '"') {
+						this.state = State.JSON;
+					}
+					return c;
+				case STRING_ESCAPE:
+					this.state = State.STRING;
+					return c;
+				case SLASH:
+					if (c == '/') {
+						this.state = State.LINE_COMMENT;
+						continue;
+					}
+					if (c == '*') {
+						this.state = State.BLOCK_COMMENT;
+						continue;
+					}
+					// Not a comment after all; hand back the slash, and hold onto this
+					this.state = (c == '"') ? State.STRING : State.JSON;
+					this.pending = c;
+					return '/';
+				case LINE_COMMENT:
+					if (c == '\n' || c == '\r') {
+						this.state = State.JSON;
+						return c;
+					}
+					continue;
+				case BLOCK_COMMENT:
+					if (c == '*') {
+						this.state = State.BLOCK_COMMENT_STAR;
+					}
+					continue;
+				case BLOCK_COMMENT_STAR:
+					if (c == '/') {
+						this.state = State.JSON;
+					}
+					else if (c != '*') {
+						this.state = State.BLOCK_COMMENT;
+					}
+					continue;
+			}
+		}
+
+		// A trailing slash at the very end of the file
+		if (this.state == State.SLASH) {
+			this.state = State.JSON;
+			return '/';
+		}
+
+		return -1;
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+
+		int read = 0;
+		while (read < len) {
+			final int c = read();
+			if (c == -1) {
+				break;
+			}
+
+			cbuf[off + read] = (char) c;
+			read++;
+
+			// Don't block waiting for more if we've got something to give
+			if (this.pending == -1 && !in.ready()) {
+				break;
+			}
+		}
+
+		return (read == 0) ? -1 : read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && read() != -1) {
+			skipped++;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void mark(int readAheadLimit) throws IOException {
+		throw new IOException("mark() not supported");
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("reset() not supported");
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+/**
+ * Reads our JSON config files in, stripping out any comments as it goes,
+ * without ever holding the raw file in memory.
+ */
+public final class JsonLoader {
+
+	private JsonLoader() {
+	}
+
+	/**
+	 * Read a JSON object in from a given file
+	 *
+	 * @param path the file to read
+	 * @return the (comment-free) JSON object in that file
+	 * @throws IOException if the file can't be read
+	 * @throws javax.json.stream.JsonParsingException if the JSON is invalid
+	 */
+	public static JsonObject read(Path path) throws IOException {
+		try (Reader reader = new CommentStrippingReader(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+				JsonReader jsonReader = Json.createReader(reader)) {
+			return jsonReader.readObject();
+		}
+	}
+}
@@ -91,6 +91,7 @@ public abstract class AMachineData extends AData {
 	private InternetAddress emailAddress;
 
 	private Boolean throttled;
+	private Integer ruleWeight;
 
 	private Set<TrafficRule> trafficRules;
 
@@ -104,6 +105,7 @@ public abstract class AMachineData extends AData {
 		this.networkInterfaces = null;
 		this.emailAddress = null;
 		this.throttled = null;
+		this.ruleWeight = null;
 
 		this.types = new LinkedHashSet<>();
 		this.externalIPAddresses = new LinkedHashSet<>();
@@ -232,6 +234,7 @@ public abstract class AMachineData extends AData {
 	 */
 	private void readFirewallData(JsonObject firewallData) throws InvalidPortException, InvalidIPAddressException {
 		readThrottled(firewallData);
+		readRuleWeight(firewallData);
 		readListens(firewallData);
 		readForwards(firewallData);
 		readDnats(firewallData);
@@ -337,6 +340,18 @@ public abstract class AMachineData extends AData {
 		this.throttled = firewallData.getBoolean("throttle");		
 	}
 
+	/**
+	 * Read in how often we expect this machine's firewall rules to be hit,
+	 * relative to everyone else's
+	 */
+	private void readRuleWeight(JsonObject firewallData) {
+		if (!firewallData.containsKey("rule_weight")) {
+			return;
+		}
+
+		this.ruleWeight = firewallData.getInt("rule_weight");
+	}
+
 	public final Optional<Set<String>> getCNAMEs() {
 		return Optional.ofNullable(this.cnames);
 	}
@@ -365,6 +380,10 @@ public abstract class AMachineData extends AData {
 		return this.throttled;
 	}
 
+	public final Optional<Integer> getRuleWeight() {
+		return Optional.ofNullable(this.ruleWeight);
+	}
+
 	private void putCNAME(String cname) {
 		this.cnames.add(cname);
 	}
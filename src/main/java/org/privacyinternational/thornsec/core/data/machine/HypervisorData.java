@@ -13,6 +13,7 @@ import java.util.Optional;
 import java.util.Set;
 import javax.json.JsonObject;
 
+import org.privacyinternational.thornsec.core.data.machine.configuration.HypervisorCapacityData;
 import org.privacyinternational.thornsec.core.exception.data.ADataException;
 
 /**
@@ -24,6 +25,8 @@ import org.privacyinternational.thornsec.core.exception.data.ADataException;
 public class HypervisorData extends ServerData {
 	private File vmBase;
 	private Integer backupFrequency;
+	private HypervisorCapacityData capacity;
+	private Boolean goldenImages;
 	private Set<ServerData> services;
 
 	public HypervisorData(String label) {
@@ -33,6 +36,8 @@ public class HypervisorData extends ServerData {
 		
 		this.vmBase = null;
 		this.backupFrequency = null;
+		this.capacity = null;
+		this.goldenImages = null;
 		
 		this.putType(MachineType.HYPERVISOR);
 	}
@@ -49,6 +54,14 @@ public class HypervisorData extends ServerData {
 			this.backupFrequency = data.getInt("backup_frequency");
 		}
 
+		if (data.containsKey("capacity")) {
+			this.capacity = new HypervisorCapacityData(getLabel()).read(data.getJsonObject("capacity"));
+		}
+
+		if (data.containsKey("golden_images")) {
+			this.goldenImages = data.getBoolean("golden_images");
+		}
+
 		return this;
 	}
 
@@ -67,4 +80,12 @@ public class HypervisorData extends ServerData {
 	public final Optional<Integer> getBackupFrequency() {
 		return Optional.ofNullable(this.backupFrequency);
 	}
+
+	public final Optional<HypervisorCapacityData> getCapacity() {
+		return Optional.ofNullable(this.capacity);
+	}
+
+	public final Optional<Boolean> getGoldenImages() {
+		return Optional.ofNullable(this.goldenImages);
+	}
 }
@@ -7,6 +7,7 @@
  */
 package org.privacyinternational.thornsec.core.data.machine;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.LinkedHashSet;
@@ -19,6 +20,7 @@ import javax.json.JsonString;
 import javax.json.JsonValue;
 
 import org.privacyinternational.thornsec.core.StringUtils;
+import org.privacyinternational.thornsec.core.data.machine.configuration.DNSTuningData;
 import org.privacyinternational.thornsec.core.data.machine.configuration.NetworkInterfaceData;
 import org.privacyinternational.thornsec.core.data.machine.configuration.NetworkInterfaceData.Direction;
 import org.privacyinternational.thornsec.core.exception.data.ADataException;
@@ -40,6 +42,10 @@ public class ServerData extends AMachineData {
 		DIRECT, TUNNELLED
 	}
 
+	public enum FirewallBackend {
+		SHOREWALL, NFTABLES
+	}
+
 	public enum GuestOS {
 		DEBIAN_64("debian_amd64"),
 		DEBIAN_32("alpine_x86"),
@@ -73,6 +79,10 @@ public class ServerData extends AMachineData {
 
 	private SSHConnection sshConnection;
 
+	private FirewallBackend firewallBackend;
+
+	private DNSTuningData dnsTuning;
+
 	private String packageMirror;
 	private String packageMirrorDirectory;
 
@@ -102,6 +112,10 @@ public class ServerData extends AMachineData {
 
 		this.sshConnection = null;
 
+		this.firewallBackend = null;
+
+		this.dnsTuning = null;
+
 		this.packageMirrorDirectory = null;
 		this.packageMirror = null;
 
@@ -122,6 +136,8 @@ public class ServerData extends AMachineData {
 		readProfiles(data);
 		readSSHSettings(data);
 		readUpdate(data);
+		readFirewallBackend(data);
+		readDNSTuning(data);
 		readMirror(data);
 		readKeepassDbPath(data);
 		readCPUs(data);
@@ -268,6 +284,37 @@ public class ServerData extends AMachineData {
 		this.update = data.getBoolean("update");
 	}
 
+	/**
+	 * @param data
+	 * @throws InvalidPropertyException if it's not a backend we know about
+	 */
+	private void readFirewallBackend(JsonObject data) throws InvalidPropertyException {
+		if (!data.containsKey("firewall_backend")) {
+			return;
+		}
+
+		String backend = data.getString("firewall_backend");
+		try {
+			this.firewallBackend = FirewallBackend.valueOf(backend.toUpperCase());
+		}
+		catch (IllegalArgumentException e) {
+			throw new InvalidPropertyException(backend + " is not a valid firewall_backend. It must be one of "
+					+ Arrays.toString(FirewallBackend.values()).toLowerCase());
+		}
+	}
+
+	/**
+	 * @param data
+	 * @throws InvalidPropertyException
+	 */
+	private void readDNSTuning(JsonObject data) throws InvalidPropertyException {
+		if (!data.containsKey("dns_tuning")) {
+			return;
+		}
+
+		this.dnsTuning = new DNSTuningData(getLabel()).read(data.getJsonObject("dns_tuning"));
+	}
+
 	/**
 	 * @param data
 	 * @throws InvalidPortException
@@ -493,6 +540,20 @@ public class ServerData extends AMachineData {
 		return Optional.ofNullable(this.sshListenPort);
 	}
 
+	/**
+	 * @return which firewall this machine should be built with
+	 */
+	public final Optional<FirewallBackend> getFirewallBackend() {
+		return Optional.ofNullable(this.firewallBackend);
+	}
+
+	/**
+	 * @return any overrides for how this machine's DNS server is tuned
+	 */
+	public final Optional<DNSTuningData> getDNSTuning() {
+		return Optional.ofNullable(this.dnsTuning);
+	}
+
 	public final Optional<Boolean> getUpdate() {
 		return Optional.ofNullable(this.update);
 	}
@@ -29,6 +29,7 @@ public class ServiceData extends ServerData {
 
 	private Integer backupFrequency;
 	private Integer cpuExecutionCap;
+	private Boolean pinned;
 
 	public ServiceData(String label) {
 		super(label);
@@ -43,6 +44,7 @@ public class ServiceData extends ServerData {
 		this.backupFrequency = null;
 
 		this.cpuExecutionCap = null;
+		this.pinned = null;
 
 		this.disks = null;
 	}
@@ -55,6 +57,7 @@ public class ServiceData extends ServerData {
 		readDisks();
 		readBackupFrequency();
 		readCPUExecutionCap();
+		readPinned();
 		readISO();
 
 		return this;
@@ -95,6 +98,18 @@ public class ServiceData extends ServerData {
 		setCPUExecutionCap(getData().getInt("cpu_execution_cap"));		
 	}
 
+	/**
+	 * Read in whether this service has to stay on the HyperVisor it's
+	 * declared under, or whether it can be moved to balance load
+	 */
+	private void readPinned() {
+		if (!getData().containsKey("pinned")) {
+			return;
+		}
+
+		this.pinned = getData().getBoolean("pinned");
+	}
+
 	/**
 	 * Read in any disk information
 	 * 
@@ -168,6 +183,13 @@ public class ServiceData extends ServerData {
 		return Optional.ofNullable(this.backupFrequency);
 	}
 
+	/**
+	 * @return whether this service has to stay on its current HyperVisor
+	 */
+	public final Optional<Boolean> isPinned() {
+		return Optional.ofNullable(this.pinned);
+	}
+
 	/**
 	 * @return the {@code label} of this service's HyperVisor
 	 */
@@ -0,0 +1,144 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.data.machine.configuration;
+
+import java.util.Optional;
+import javax.json.JsonObject;
+
+import org.privacyinternational.thornsec.core.StringUtils;
+import org.privacyinternational.thornsec.core.data.AData;
+import org.privacyinternational.thornsec.core.exception.data.InvalidPropertyException;
+
+/**
+ * Represents any overrides for how a Router's DNS server is tuned.
+ *
+ * Anything not set here is worked out from the Router's resources and the
+ * number of clients on the network.
+ */
+public class DNSTuningData extends AData {
+
+	private Integer threads;
+	private Integer slabs;
+	private Integer msgCacheSize;
+	private Integer rrsetCacheSize;
+	private Integer outgoingRange;
+	private Integer soRcvbuf;
+	private Boolean soReuseport;
+
+	public DNSTuningData(String label) {
+		super(label);
+
+		this.threads = null;
+		this.slabs = null;
+		this.msgCacheSize = null;
+		this.rrsetCacheSize = null;
+		this.outgoingRange = null;
+		this.soRcvbuf = null;
+		this.soReuseport = null;
+	}
+
+	@Override
+	public DNSTuningData read(JsonObject data) throws InvalidPropertyException {
+		if (data.containsKey("threads")) {
+			setThreads(data.getInt("threads"));
+		}
+		if (data.containsKey("slabs")) {
+			setSlabs(data.getInt("slabs"));
+		}
+		if (data.containsKey("msg_cache_size")) {
+			this.msgCacheSize = StringUtils.stringToMegaBytes(data.getString("msg_cache_size"));
+		}
+		if (data.containsKey("rrset_cache_size")) {
+			this.rrsetCacheSize = StringUtils.stringToMegaBytes(data.getString("rrset_cache_size"));
+		}
+		if (data.containsKey("outgoing_range")) {
+			setOutgoingRange(data.getInt("outgoing_range"));
+		}
+		if (data.containsKey("so_rcvbuf")) {
+			this.soRcvbuf = StringUtils.stringToMegaBytes(data.getString("so_rcvbuf"));
+		}
+		if (data.containsKey("so_reuseport")) {
+			this.soReuseport = data.getBoolean("so_reuseport");
+		}
+
+		return this;
+	}
+
+	private void setThreads(Integer threads) throws InvalidPropertyException {
+		if (threads < 1) {
+			throw new InvalidPropertyException("Your DNS server needs at least one thread");
+		}
+
+		this.threads = threads;
+	}
+
+	private void setSlabs(Integer slabs) throws InvalidPropertyException {
+		if (slabs < 1 || (slabs & (slabs - 1)) != 0) {
+			throw new InvalidPropertyException("DNS cache slabs must be a power of two, not " + slabs);
+		}
+
+		this.slabs = slabs;
+	}
+
+	private void setOutgoingRange(Integer range) throws InvalidPropertyException {
+		if (range < 1) {
+			throw new InvalidPropertyException("Your DNS server's outgoing range must be at least 1");
+		}
+
+		this.outgoingRange = range;
+	}
+
+	/**
+	 * @return the number of threads Unbound should run
+	 */
+	public final Optional<Integer> getThreads() {
+		return Optional.ofNullable(this.threads);
+	}
+
+	/**
+	 * @return the number of slabs for each of Unbound's caches
+	 */
+	public final Optional<Integer> getSlabs() {
+		return Optional.ofNullable(this.slabs);
+	}
+
+	/**
+	 * @return the message cache size in megabytes
+	 */
+	public final Optional<Integer> getMsgCacheSize() {
+		return Optional.ofNullable(this.msgCacheSize);
+	}
+
+	/**
+	 * @return the RRset cache size in megabytes
+	 */
+	public final Optional<Integer> getRRSetCacheSize() {
+		return Optional.ofNullable(this.rrsetCacheSize);
+	}
+
+	/**
+	 * @return the number of ports to open per thread for outgoing queries
+	 */
+	public final Optional<Integer> getOutgoingRange() {
+		return Optional.ofNullable(this.outgoingRange);
+	}
+
+	/**
+	 * @return the size of the receive buffer to ask for, in megabytes
+	 */
+	public final Optional<Integer> getSoRcvbuf() {
+		return Optional.ofNullable(this.soRcvbuf);
+	}
+
+	/**
+	 * @return whether each thread should get its own listening socket
+	 */
+	public final Optional<Boolean> getSoReuseport() {
+		return Optional.ofNullable(this.soReuseport);
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.data.machine.configuration;
+
+import java.util.Optional;
+import javax.json.JsonObject;
+
+import org.privacyinternational.thornsec.core.StringUtils;
+import org.privacyinternational.thornsec.core.data.AData;
+import org.privacyinternational.thornsec.core.exception.data.InvalidPropertyException;
+
+/**
+ * Represents the physical resources a HyperVisor has to share between its
+ * Services, and how far we're prepared to overcommit them.
+ *
+ * This is separate to the HyperVisor's "ram" and "cpus", as those are also
+ * read in as the default for its Services.
+ */
+public class HypervisorCapacityData extends AData {
+
+	private Integer ram;
+	private Integer cpus;
+	private Integer reservedRAM;
+	private Double ramOvercommit;
+	private Double cpuOvercommit;
+
+	public HypervisorCapacityData(String label) {
+		super(label);
+
+		this.ram = null;
+		this.cpus = null;
+		this.reservedRAM = null;
+		this.ramOvercommit = null;
+		this.cpuOvercommit = null;
+	}
+
+	@Override
+	public HypervisorCapacityData read(JsonObject data) throws InvalidPropertyException {
+		if (data.containsKey("ram")) {
+			setRAM(StringUtils.stringToMegaBytes(data.getString("ram")));
+		}
+		if (data.containsKey("cpus")) {
+			setCPUs(data.getInt("cpus"));
+		}
+		if (data.containsKey("reserved_ram")) {
+			this.reservedRAM = StringUtils.stringToMegaBytes(data.getString("reserved_ram"));
+		}
+		if (data.containsKey("ram_overcommit")) {
+			this.ramOvercommit = readRatio(data, "ram_overcommit");
+		}
+		if (data.containsKey("cpu_overcommit")) {
+			this.cpuOvercommit = readRatio(data, "cpu_overcommit");
+		}
+
+		return this;
+	}
+
+	private void setRAM(Integer ram) throws InvalidPropertyException {
+		if (ram < 1) {
+			throw new InvalidPropertyException("A HyperVisor's capacity must include some RAM");
+		}
+
+		this.ram = ram;
+	}
+
+	private void setCPUs(Integer cpus) throws InvalidPropertyException {
+		if (cpus < 1) {
+			throw new InvalidPropertyException("A HyperVisor's capacity must include at least one CPU");
+		}
+
+		this.cpus = cpus;
+	}
+
+	private Double readRatio(JsonObject data, String key) throws InvalidPropertyException {
+		final Double ratio = data.getJsonNumber(key).doubleValue();
+
+		if (ratio <= 0) {
+			throw new InvalidPropertyException(key + " must be greater than 0, not " + ratio);
+		}
+
+		return ratio;
+	}
+
+	/**
+	 * @return the HyperVisor's physical RAM, in megabytes
+	 */
+	public final Optional<Integer> getRAM() {
+		return Optional.ofNullable(this.ram);
+	}
+
+	/**
+	 * @return the number of CPU threads the HyperVisor has
+	 */
+	public final Optional<Integer> getCPUs() {
+		return Optional.ofNullable(this.cpus);
+	}
+
+	/**
+	 * @return the RAM to keep back for the HyperVisor itself, in megabytes
+	 */
+	public final Optional<Integer> getReservedRAM() {
+		return Optional.ofNullable(this.reservedRAM);
+	}
+
+	/**
+	 * @return the most RAM we'll promise to Services, as a multiple of what's
+	 * 			available to them
+	 */
+	public final Optional<Double> getRAMOvercommit() {
+		return Optional.ofNullable(this.ramOvercommit);
+	}
+
+	/**
+	 * @return the most virtual CPUs we'll give to Services, as a multiple of
+	 * 			the HyperVisor's threads
+	 */
+	public final Optional<Double> getCPUOvercommit() {
+		return Optional.ofNullable(this.cpuOvercommit);
+	}
+}
@@ -4,6 +4,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.Objects;
 import java.util.Set;
 import org.privacyinternational.thornsec.core.exception.data.InvalidPortException;
 import inet.ipaddr.HostName;
@@ -124,4 +125,30 @@ public class TrafficRule {
 	public void setSource(String source) {
 		this.source = source;
 	}
+
+	/**
+	 * Two rules are equal if they'd let through exactly the same traffic
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof TrafficRule)) {
+			return false;
+		}
+
+		final TrafficRule other = (TrafficRule) o;
+
+		return Objects.equals(this.encapsulation, other.encapsulation)
+				&& Objects.equals(this.table, other.table)
+				&& Objects.equals(this.source, other.source)
+				&& Objects.equals(this.destinations, other.destinations)
+				&& Objects.equals(this.ports, other.ports);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(this.encapsulation, this.table, this.source, this.destinations, this.ports);
+	}
 }
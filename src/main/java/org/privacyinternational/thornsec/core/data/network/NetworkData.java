@@ -8,14 +8,12 @@
 package org.privacyinternational.thornsec.core.data.network;
 
 import java.io.IOException;
-import java.io.StringReader;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -25,7 +23,6 @@ import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
-import javax.json.JsonReader;
 import javax.json.JsonString;
 import javax.json.JsonValue;
 import javax.json.stream.JsonParsingException;
@@ -35,6 +32,7 @@ import inet.ipaddr.IPAddress;
 import inet.ipaddr.IPAddressString;
 import inet.ipaddr.IncompatibleAddressException;
 import org.privacyinternational.thornsec.core.data.AData;
+import org.privacyinternational.thornsec.core.data.JsonLoader;
 import org.privacyinternational.thornsec.core.data.machine.AMachineData;
 import org.privacyinternational.thornsec.core.data.machine.AMachineData.MachineType;
 import org.privacyinternational.thornsec.core.data.machine.DedicatedData;
@@ -66,6 +64,7 @@ public class NetworkData extends AData {
 	private String domain;
 
 	private Boolean adBlocking;
+	private Set<String> adBlockLists;
 	private Boolean autoGenPassphrases;
 
 	private Boolean vpnOnly;
@@ -73,6 +72,12 @@ public class NetworkData extends AData {
 
 	private Set<HostName> upstreamDNS;
 
+	private Integer auditConcurrency;
+	private Integer auditTimeout;
+
+	private Boolean orderFirewallRules;
+	private String firewallCounters;
+
 	private final Map<MachineType, IPAddress> subnets;
 
 	private Map<String, AMachineData> machines;
@@ -92,12 +97,19 @@ public class NetworkData extends AData {
 		this.configIP = null;
 
 		this.adBlocking = null;
+		this.adBlockLists = null;
 		this.autoGenPassphrases = null;
 		this.vpnOnly = null;
 		this.autoGuest = null;
 
 		this.upstreamDNS = null;
 
+		this.auditConcurrency = null;
+		this.auditTimeout = null;
+
+		this.orderFirewallRules = null;
+		this.firewallCounters = null;
+
 		this.subnets = new Hashtable<>();
 
 		this.machines = new LinkedHashMap<>();
@@ -121,6 +133,8 @@ public class NetworkData extends AData {
 		readAutoGenPasswords();
 		readVPNOnly();
 		readAutoGuest();
+		readAuditSettings();
+		readFirewallOrdering();
 		readSubnets();
 		readUsers();
 		readMachines();
@@ -313,6 +327,34 @@ public class NetworkData extends AData {
 		this.vpnOnly = getData().getBoolean("vpn_only");
 	}
 
+	/**
+	 * Read in how many servers we should audit at once, and how long (in
+	 * seconds) we should give each one
+	 */
+	private void readAuditSettings() {
+		if (getData().containsKey("audit_concurrency")) {
+			this.auditConcurrency = getData().getInt("audit_concurrency");
+		}
+
+		if (getData().containsKey("audit_timeout")) {
+			this.auditTimeout = getData().getInt("audit_timeout");
+		}
+	}
+
+	/**
+	 * Read in whether we should order our firewall rules by how often we
+	 * expect them to be hit, and where to find any counters to help
+	 */
+	private void readFirewallOrdering() {
+		if (getData().containsKey("order_firewall_rules")) {
+			this.orderFirewallRules = getData().getBoolean("order_firewall_rules");
+		}
+
+		if (getData().containsKey("firewall_counters")) {
+			this.firewallCounters = getData().getString("firewall_counters");
+		}
+	}
+
 	/**
 	 * Read in whether we should autogenerate secure passwords, or set the
 	 * default from {@link NETWORK_AUTOGENPASSWDS}
@@ -330,6 +372,14 @@ public class NetworkData extends AData {
 	 */
 	@Deprecated //TODO: this should be in Router(), not here.
 	private void readAdBlocking() {
+		if (getData().containsKey("adblock_lists")) {
+			this.adBlockLists = new LinkedHashSet<>();
+
+			for (final JsonValue list : getData().getJsonArray("adblock_lists")) {
+				this.adBlockLists.add(((JsonString) list).getString());
+			}
+		}
+
 		if (!getData().containsKey("adblocking")) {
 			return;
 		}
@@ -375,9 +425,12 @@ public class NetworkData extends AData {
 	}
 
 	/**
-	 * Parse and merge a given file with this. The include argument
-	 * must be an absolute path to a JSON file, in your Operating System's
-	 * native path style.
+	 * Parse and merge any included files with this. Each include argument
+	 * must be a path to a JSON file, relative to our config file, in your
+	 * Operating System's native path style.
+	 * 
+	 * Everything is merged into a single map, and our data is only rebuilt
+	 * once at the end, however many includes there are.
 	 * 
 	 * @throws InvalidPropertyException if a path is invalid
 	 * @throws InvalidJSONException if the JSON itself is invalid
@@ -387,44 +440,46 @@ public class NetworkData extends AData {
 			return;
 		}
 
+		final Map<String, JsonValue> merged = new LinkedHashMap<>(getData());
+
 		for (JsonValue path : getData().getJsonArray("includes")) {
-			readInclude(((JsonString) path).getString());
+			readInclude(((JsonString) path).getString(), merged, new HashSet<>());
 		}
+
+		final JsonObjectBuilder newData = Json.createObjectBuilder();
+		merged.forEach((k,v) -> newData.add(k, v));
+
+		setData(newData.build());
 	}
 
 	/**
-	 * Parse and merge a given file with this. The include argument
-	 * must be an absolute path to a JSON file, in your Operating System's
-	 * native path style.
+	 * Parse and merge a given file into a map of our data. Any values in the
+	 * include will override those already there.
 	 * 
-	 * @param includePath Absolute path to the JSON file to be read into our
-	 * 		NetworkData
+	 * @param includePath Path to the JSON file to be read into our NetworkData
+	 * @param merged our data so far
+	 * @param including the includes we're currently part-way through, so we
+	 * 		can catch any which include themselves
 	 * @throws InvalidPropertyException if the path to the JSON is invalid
 	 * @throws InvalidJSONException 
 	 */
-	private void readInclude(String includePath) throws InvalidPropertyException, InvalidJSONException {
+	private void readInclude(String includePath, Map<String, JsonValue> merged, Set<Path> including) throws InvalidPropertyException, InvalidJSONException {
 		String configBase = getConfigFilePath().getParent().toString();
-		Path includeFile = Path.of(configBase, includePath);
+		Path includeFile = Path.of(configBase, includePath).normalize();
 
-		try {
-			String rawUTF8Data = new String(Files.readAllBytes(includeFile),
-											StandardCharsets.UTF_8);
-			rawUTF8Data = rawUTF8Data.replaceAll("(?:/\\*(?:[^*]|(?:\\*+[^*/]))*\\*+/)|(?://.*)", "");
-
-			JsonReader jsonReader = Json.createReader(new StringReader(rawUTF8Data));
-
-			JsonObject currentData = getData();
-			JsonObject includeData = jsonReader.readObject();
+		if (!including.add(includeFile)) {
+			throw new InvalidPropertyException(includeFile.toString()
+					+ " ends up including itself");
+		}
 
-			JsonObjectBuilder newData = Json.createObjectBuilder();
-			currentData.forEach((k,v) -> newData.add(k, v));
-			includeData.forEach((k,v) -> newData.add(k, v));
+		try {
+			JsonObject includeData = JsonLoader.read(includeFile);
 
-			setData(newData.build());
+			merged.putAll(includeData);
 
 			if (includeData.containsKey("includes")) {
 				for (JsonValue path : includeData.getJsonArray("includes")) {
-					this.readInclude(((JsonString) path).getString());
+					this.readInclude(((JsonString) path).getString(), merged, including);
 				}
 			}
 		}
@@ -436,6 +491,8 @@ public class NetworkData extends AData {
 			throw new InvalidJSONException("Trying to read in " + includeFile.toString()
 					+ " threw the following error " + e.getLocalizedMessage());
 		}
+
+		including.remove(includeFile);
 	}
 
 	/**
@@ -581,6 +638,41 @@ public class NetworkData extends AData {
 		return Optional.ofNullable(this.adBlocking);
 	}
 
+	/**
+	 * Which local blocklists should we compile our ad-blocking zone from?
+	 */
+	public final Optional<Set<String>> getAdBlockLists() {
+		return Optional.ofNullable(this.adBlockLists);
+	}
+
+	/**
+	 * How many servers should we audit at once?
+	 */
+	public final Optional<Integer> getAuditConcurrency() {
+		return Optional.ofNullable(this.auditConcurrency);
+	}
+
+	/**
+	 * How long, in seconds, should we give each server to finish its audit?
+	 */
+	public final Optional<Integer> getAuditTimeout() {
+		return Optional.ofNullable(this.auditTimeout);
+	}
+
+	/**
+	 * Should we order our firewall rules by how often we expect them to be hit?
+	 */
+	public final Optional<Boolean> getOrderFirewallRules() {
+		return Optional.ofNullable(this.orderFirewallRules);
+	}
+
+	/**
+	 * Where's the iptables-save -c dump to take our firewall rules' weights from?
+	 */
+	public final Optional<String> getFirewallCounters() {
+		return Optional.ofNullable(this.firewallCounters);
+	}
+
 	/**
 	 * Do we require users to be on a VPN connection to use our services?
 	 * (This is only useful for internal services...)
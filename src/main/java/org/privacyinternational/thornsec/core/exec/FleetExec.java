@@ -0,0 +1,279 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.exec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class runs a ManageExec against a number of hosts at once.
+ *
+ * At most {@code concurrency} hosts are run at a time, and each host gets
+ * {@code timeout} seconds to finish - from connecting and uploading its script
+ * through to that script exiting - before we kill it. Each host's output goes
+ * into its own buffers - one for stdout, one for stderr - which are written
+ * out in one go once that host is done, so hosts' output never gets
+ * interleaved. Each line of a host's stderr is prefixed with its label, so you
+ * can tell whose it is. Once everyone's finished, we write out a summary.
+ */
+public class FleetExec {
+
+	/**
+	 * Builds the ManageExec for a given host, writing its stdout and stderr to
+	 * the given sinks
+	 */
+	@FunctionalInterface
+	public interface HostJob {
+		ManageExec build(OutputStream sink, OutputStream errors) throws Exception;
+	}
+
+	public enum Status {
+		COMPLETED, FAILED, TIMED_OUT, SKIPPED, ERROR;
+	}
+
+	/**
+	 * How a given host got on
+	 */
+	public static class Result {
+		private final String host;
+		private final Status status;
+		private final long duration;
+		private final String output;
+		private final String errors;
+
+		Result(String host, Status status, long duration, String output, String errors) {
+			this.host = host;
+			this.status = status;
+			this.duration = duration;
+			this.output = output;
+			this.errors = errors;
+		}
+
+		public String getHost() {
+			return this.host;
+		}
+
+		public Status getStatus() {
+			return this.status;
+		}
+
+		/**
+		 * @return how long this host took, in milliseconds
+		 */
+		public long getDuration() {
+			return this.duration;
+		}
+
+		/**
+		 * @return everything this host wrote out
+		 */
+		public String getOutput() {
+			return this.output;
+		}
+
+		/**
+		 * @return everything this host wrote to stderr
+		 */
+		public String getErrors() {
+			return this.errors;
+		}
+	}
+
+	// This is what the footer of our scripts prints out
+	private static final Pattern SCRIPT_SUMMARY = Pattern.compile("passed=(\\d+) failed=(\\d+)");
+
+	private final int concurrency;
+	private final long timeout;
+
+	/**
+	 * @param concurrency the maximum number of hosts to run at once
+	 * @param timeout how long, in seconds, to give each host
+	 */
+	public FleetExec(int concurrency, long timeout) {
+		this.concurrency = Math.max(1, concurrency);
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Run the given jobs, writing each host's output (and then a summary) to out
+	 *
+	 * @param jobs the jobs to run, keyed by host
+	 * @param out where to write everything
+	 * @return how each host got on, in the order they were given
+	 */
+	public Collection<Result> run(Map<String, HostJob> jobs, OutputStream out) {
+		final ExecutorService pool = Executors.newFixedThreadPool(Math.min(this.concurrency, Math.max(1, jobs.size())));
+		final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+		final Map<String, Future<Result>> futures = new LinkedHashMap<>();
+
+		for (Map.Entry<String, HostJob> job : jobs.entrySet()) {
+			futures.put(job.getKey(), pool.submit(() -> {
+				final Result result = runHost(job.getKey(), job.getValue(), watchdog);
+				writeOut(out, header(result.getHost()) + result.getOutput() + "\n"
+						+ prefixLines(result.getHost(), result.getErrors()));
+				return result;
+			}));
+		}
+
+		pool.shutdown();
+
+		final List<Result> results = new ArrayList<>();
+		for (Map.Entry<String, Future<Result>> future : futures.entrySet()) {
+			try {
+				results.add(future.getValue().get());
+			} catch (InterruptedException | ExecutionException e) {
+				results.add(new Result(future.getKey(), Status.ERROR, 0, "", e.getLocalizedMessage()));
+			}
+		}
+
+		watchdog.shutdownNow();
+
+		writeOut(out, getSummary(results));
+
+		return results;
+	}
+
+	/**
+	 * Run a given host's job, giving it until {@code timeout} seconds after we
+	 * start to finish everything. The watchdog kills the host's ssh processes
+	 * if it runs over, so we can't get stuck mid-upload.
+	 */
+	private Result runHost(String host, HostJob job, ScheduledExecutorService watchdog) {
+		final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		final long start = System.currentTimeMillis();
+		final long deadline = start + TimeUnit.SECONDS.toMillis(this.timeout);
+		final AtomicBoolean timedOut = new AtomicBoolean(false);
+
+		ManageExec manageExec = null;
+		ScheduledFuture<?> kill = null;
+		Status status;
+
+		try {
+			manageExec = job.build(sink, errors);
+
+			if (manageExec == null) {
+				status = Status.SKIPPED;
+			}
+			else {
+				final ManageExec toKill = manageExec;
+				kill = watchdog.schedule(() -> {
+					timedOut.set(true);
+					toKill.destroy();
+				}, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+				final ProcessExec exec = manageExec.manage();
+
+				if (exec == null) {
+					status = timedOut.get() ? Status.TIMED_OUT : Status.ERROR;
+				}
+				else if (!exec.waitFor(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+						|| timedOut.get()) {
+					manageExec.destroy();
+					status = Status.TIMED_OUT;
+				}
+				else {
+					status = (exec.exitValue() == 0) ? Status.COMPLETED : Status.FAILED;
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			if (manageExec != null) {
+				manageExec.destroy();
+			}
+			Thread.currentThread().interrupt();
+			status = Status.ERROR;
+		}
+		catch (Exception e) {
+			e.printStackTrace(new PrintStream(errors, true, StandardCharsets.UTF_8));
+			status = Status.ERROR;
+		}
+		finally {
+			if (kill != null) {
+				kill.cancel(false);
+			}
+		}
+
+		return new Result(host, status, System.currentTimeMillis() - start,
+				new String(sink.toByteArray(), StandardCharsets.UTF_8),
+				new String(errors.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Prefix each line of the given text with our host's label
+	 */
+	private String prefixLines(String host, String text) {
+		final StringBuilder prefixed = new StringBuilder();
+
+		for (String line : text.split("\n")) {
+			if (!line.isEmpty()) {
+				prefixed.append("[").append(host).append("] ").append(line).append("\n");
+			}
+		}
+
+		return prefixed.toString();
+	}
+
+	private String header(String host) {
+		return "=======================" + host + "==========================\n";
+	}
+
+	private String getSummary(Collection<Result> results) {
+		String summary = "";
+		summary += "======================= Summary ==========================\n";
+
+		for (Result result : results) {
+			summary += result.getHost() + ": " + result.getStatus();
+			summary += " in " + (result.getDuration() / 1000) + "s";
+
+			final Matcher matcher = SCRIPT_SUMMARY.matcher(result.getOutput());
+			String passed = null;
+			String failed = null;
+			while (matcher.find()) {
+				passed = matcher.group(1);
+				failed = matcher.group(2);
+			}
+			if (passed != null) {
+				summary += " (passed=" + passed + " failed=" + failed + ")";
+			}
+
+			summary += "\n";
+		}
+
+		return summary;
+	}
+
+	private void writeOut(OutputStream out, String text) {
+		synchronized (out) {
+			try {
+				out.write(text.getBytes(StandardCharsets.UTF_8));
+				out.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -2,25 +2,36 @@ package org.privacyinternational.thornsec.core.exec;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 
+/**
+ * Pumps everything from an InputStream into an OutputStream, a buffer at a
+ * time.
+ */
 class InputExec implements Runnable {
 
-	private InputStreamReader reader;
-	private OutputStream writer;
+	private static final int BUFFER_SIZE = 8192;
+
+	private final InputStream reader;
+	private final OutputStream writer;
 
 	InputExec(InputStream stream, OutputStream writer) {
+		this.reader = stream;
 		this.writer = writer;
-		reader = new InputStreamReader(stream);
 	}
 
 	public void run() {
+		final byte[] buffer = new byte[BUFFER_SIZE];
+
 		try {
-			int c = reader.read();
-			while (c != -1) {
-				writer.write(c);
-				c = reader.read();
+			int read = reader.read(buffer);
+			while (read != -1) {
+				if (writer != null) {
+					writer.write(buffer, 0, read);
+					writer.flush();
+				}
+
+				read = reader.read(buffer);
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
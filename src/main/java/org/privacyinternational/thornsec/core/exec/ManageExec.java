@@ -2,79 +2,147 @@ package org.privacyinternational.thornsec.core.exec;
 
 import java.io.OutputStream;
 import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 
+import org.privacyinternational.thornsec.core.exception.AThornSecException;
+import org.privacyinternational.thornsec.core.iface.IScript;
 import org.privacyinternational.thornsec.core.model.machine.ServerModel;
 import org.privacyinternational.thornsec.core.model.network.NetworkModel;
+import inet.ipaddr.IPAddress;
 
 public class ManageExec {
 
+	/**
+	 * The (unexported) shell variable our scripts keep their sudo password in
+	 */
+	public static final String SUDO_PASS_VAR = "THORNSEC_SUDO_PASS";
+
+	/**
+	 * The file descriptor our scripts read their sudo password from
+	 */
+	public static final Integer SUDO_PASS_FD = 3;
+
 	private InetAddress ip;
 	
 	private Integer port;
 
 	private String user;
-	private String cmd;
+	private IScript script;
 	private String password;
 	
 	private OutputStream out;
+	private OutputStream err;
+
+	private volatile ProcessExec upload;
+	private volatile ProcessExec exec;
+	private volatile boolean destroyed;
 
 	public ManageExec(String user, String password, InetAddress inetAddress, Integer port, String cmd, OutputStream out) {
 		this.user = user;
 		this.ip = inetAddress;
 		this.port = port;
-		this.cmd = cmd;
+		this.script = (scriptOut) -> scriptOut.append(cmd);
 		this.out = out;
+		this.err = System.err;
 		this.password = password;
 	}
 
-	public ManageExec(ServerModel serverModel, NetworkModel networkModel, String cmd, OutputStream out) {
-		// TODO Auto-generated constructor stub
+	public ManageExec(ServerModel serverModel, NetworkModel networkModel, String password, IScript script, OutputStream out) {
+		this(serverModel, networkModel, password, script, out, System.err);
+	}
+
+	public ManageExec(ServerModel serverModel, NetworkModel networkModel, String password, IScript script, OutputStream out, OutputStream err) {
+		this.script = script;
+		this.out = out;
+		this.err = err;
+		this.port = serverModel.getSSHListenPort();
+		this.password = password;
+
+		try {
+			this.user = networkModel.getData().getUser();
+
+			final Iterator<IPAddress> ips = serverModel.getIPs(true).iterator();
+			if (ips.hasNext()) {
+				this.ip = ips.next().toInetAddress();
+			}
+			else {
+				this.ip = networkModel.getData().getConfigIP().toInetAddress();
+			}
+		} catch (AThornSecException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
 	}
 
+	/**
+	 * Upload our script to the host and start it running, both down the same
+	 * (multiplexed) ssh session.
+	 *
+	 * The script is streamed up over stdin, then run as our user. Our password is
+	 * handed to it on its own file descriptor, and its header feeds that to each
+	 * sudo it runs, so only the commands which need root get it, and there's no
+	 * need to wait for a prompt.
+	 *
+	 * @return the running script, or null if it couldn't be started
+	 */
 	public ProcessExec manage() {
 		try {
-			String sshConnect = "";
-			sshConnect += "ssh";
-			sshConnect += " -o ConnectTimeout=3";
-			sshConnect += " -o StrictHostKeyChecking=no";
-			sshConnect += " -o UserKnownHostsFile=/dev/null";
-			sshConnect += " -p " + this.port;
-			sshConnect += " " + this.user + "@" + this.ip;
-
-			String ttyConnect = "";
-			ttyConnect += "ssh";
-			ttyConnect += " -t -t";
-			ttyConnect += " -o ConnectTimeout=3";
-			ttyConnect += " -o StrictHostKeyChecking=no";
-			ttyConnect += " -o UserKnownHostsFile=/dev/null";
-			ttyConnect += " -p " + this.port;
-			ttyConnect += " " + this.user + "@" + this.ip;
+			final SSHSession session = SSHSession.get(this.user, this.ip, this.port);
 
 			String outputScript = "";
 			outputScript += " cat > script.sh;";
 			outputScript += " chmod +x script.sh;";
-			outputScript += " exit;";
-			
-			ProcessExec exec1 = new ProcessExec(sshConnect + outputScript, out, System.err);
-			exec1.writeAllClose(this.cmd.getBytes());
-			exec1.waitFor();
-			
+
+			this.upload = new ProcessExec(session.getCommand(outputScript), out, err);
+			if (this.destroyed) {
+				this.upload.destroy();
+				return null;
+			}
+			this.upload.writeAllClose(this.script);
+			this.upload.waitFor();
+
+			if (this.destroyed || this.upload.exitValue() != 0) {
+				return null;
+			}
+
 			String execScript = "";
-			execScript += " ./script.sh;";
+			execScript += " ./script.sh " + SUDO_PASS_FD + "<&0 </dev/null;";
 			//execScript += " rm -rf script.sh;";
-			execScript += " exit;";
-			
-			ProcessExec exec2 = new ProcessExec(ttyConnect + execScript, out, System.err);
-			Thread.sleep(500);
-			
+
+			this.exec = new ProcessExec(session.getCommand(execScript), out, err);
+			if (this.destroyed) {
+				this.exec.destroy();
+				return null;
+			}
+
 			String pass = password + "\n";
-			exec2.writeAllOpen(pass.getBytes());
-			
-			return exec2;
+			this.exec.writeAllClose(pass.getBytes(StandardCharsets.UTF_8));
+
+			return this.exec;
 		}
 		catch (Exception e1) {
 			e1.printStackTrace();
 		}
 		return null;
 	}
+
+	/**
+	 * Kill off whatever we're currently doing on the host, whether that's
+	 * uploading our script or running it. This is safe to call from another
+	 * thread, and unblocks a manage() which is stuck mid-upload.
+	 */
+	public void destroy() {
+		this.destroyed = true;
+
+		final ProcessExec upload = this.upload;
+		if (upload != null) {
+			upload.destroy();
+		}
+
+		final ProcessExec exec = this.exec;
+		if (exec != null) {
+			exec.destroy();
+		}
+	}
 }
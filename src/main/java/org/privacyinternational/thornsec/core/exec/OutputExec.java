@@ -1,5 +1,7 @@
 package org.privacyinternational.thornsec.core.exec;
 
+import java.nio.charset.StandardCharsets;
+
 public class OutputExec {
 
 	private String cmd;
@@ -13,11 +15,7 @@ public class OutputExec {
 		
 		try {
 			Process proc3 = Runtime.getRuntime().exec(cmd);
-			int read = proc3.getInputStream().read();
-			while (read != -1) {
-				value += (char) read;
-				read = proc3.getInputStream().read();
-			}
+			value = new String(proc3.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
 		}
 		catch (Exception e) {
 			e.printStackTrace();
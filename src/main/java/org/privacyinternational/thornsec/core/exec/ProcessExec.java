@@ -1,19 +1,27 @@
 package org.privacyinternational.thornsec.core.exec;
 
+import java.io.BufferedWriter;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.privacyinternational.thornsec.core.iface.IScript;
 
 class ProcessExec {
 
 	private Process proc;
+	private Thread inthread;
+	private Thread errthread;
 
 	ProcessExec(String cmd, OutputStream out, OutputStream err) {
 		try {
 			proc = Runtime.getRuntime().exec(cmd);
 			InputExec procin = new InputExec(proc.getInputStream(), out);
-			Thread inthread = new Thread(procin);
+			this.inthread = new Thread(procin);
 			inthread.start();
 			InputExec procerr = new InputExec(proc.getErrorStream(), err);
-			Thread errthread = new Thread(procerr);
+			this.errthread = new Thread(procerr);
 			errthread.start();
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -28,6 +36,33 @@ class ProcessExec {
 		}
 	}
 
+	/**
+	 * Wait up to a given time for our process to finish, and for all of its
+	 * output to have been copied out.
+	 *
+	 * @return true if the process finished in time, false otherwise
+	 */
+	boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+		if (proc == null || !proc.waitFor(timeout, unit)) {
+			return false;
+		}
+
+		inthread.join();
+		errthread.join();
+
+		return true;
+	}
+
+	int exitValue() {
+		return proc.exitValue();
+	}
+
+	void destroy() {
+		if (proc != null) {
+			proc.destroyForcibly();
+		}
+	}
+
 	void writeAllOpen(byte[] bytes) {
 		try {
 			proc.getOutputStream().write(bytes);
@@ -37,6 +72,17 @@ class ProcessExec {
 		}
 	}
 
+	/**
+	 * Stream a script into our process, closing its input when we're done
+	 */
+	void writeAllClose(IScript script) {
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(proc.getOutputStream(), StandardCharsets.UTF_8))) {
+			script.emit(writer);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
 	void writeAllClose(byte[] bytes) {
 		try {
 			proc.getOutputStream().write(bytes);
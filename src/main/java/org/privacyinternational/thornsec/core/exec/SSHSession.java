@@ -0,0 +1,118 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.exec;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class represents a (multiplexed) ssh connection to a given host.
+ *
+ * The first command we run against a host opens a master connection, which
+ * stays open in the background. Everything else we run against that host
+ * (uploading scripts, running them, whether for an audit, dry run or config)
+ * then goes down the same connection rather than doing a whole new handshake.
+ *
+ * All of our master connections are closed down when the JVM exits.
+ */
+public class SSHSession {
+
+	// Which ssh binary to use. This can be pointed at a stand-in script for testing
+	private static final String SSH = System.getProperty("thornsec.ssh", "ssh");
+
+	// How long, in seconds, to keep an idle master connection around for
+	private static final Integer PERSIST = 600;
+
+	private static final Map<String, SSHSession> sessions = new ConcurrentHashMap<>();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(SSHSession::closeAll));
+	}
+
+	private final String user;
+	private final InetAddress ip;
+	private final Integer port;
+	private final File controlPath;
+
+	private SSHSession(String user, InetAddress ip, Integer port) {
+		this.user = user;
+		this.ip = ip;
+		this.port = port;
+		this.controlPath = new File(System.getProperty("java.io.tmpdir"),
+				"thornsec-" + Integer.toHexString(getKey(user, ip, port).hashCode()) + ".sock");
+	}
+
+	/**
+	 * Get the session for a given host, creating it if it doesn't exist yet
+	 */
+	public static SSHSession get(String user, InetAddress ip, Integer port) {
+		return sessions.computeIfAbsent(getKey(user, ip, port), (key) -> new SSHSession(user, ip, port));
+	}
+
+	private static String getKey(String user, InetAddress ip, Integer port) {
+		return user + "@" + ((ip == null) ? null : ip.getHostAddress()) + ":" + port;
+	}
+
+	/**
+	 * Build the command to run a given (remote) command down this session
+	 *
+	 * @param remoteCommand the command to run on the host
+	 * @return the local command to run
+	 */
+	String getCommand(String remoteCommand) {
+		String command = "";
+		command += getConnection();
+		command += " " + remoteCommand;
+
+		return command;
+	}
+
+	private String getConnection() {
+		String connection = "";
+		connection += SSH;
+		connection += " -o ControlMaster=auto";
+		connection += " -o ControlPath=" + this.controlPath.getAbsolutePath();
+		connection += " -o ControlPersist=" + PERSIST;
+		connection += " -o ConnectTimeout=3";
+		connection += " -o StrictHostKeyChecking=no";
+		connection += " -o UserKnownHostsFile=/dev/null";
+		connection += " -p " + this.port;
+		connection += " " + this.user + "@" + ((this.ip == null) ? null : this.ip.getHostAddress());
+
+		return connection;
+	}
+
+	/**
+	 * Close down this session's master connection, if there is one
+	 */
+	public void close() {
+		if (!this.controlPath.exists()) {
+			return;
+		}
+
+		String close = "";
+		close += SSH;
+		close += " -o ControlPath=" + this.controlPath.getAbsolutePath();
+		close += " -O exit";
+		close += " -p " + this.port;
+		close += " " + this.user + "@" + ((this.ip == null) ? null : this.ip.getHostAddress());
+
+		new ProcessExec(close, OutputStream.nullOutputStream(), OutputStream.nullOutputStream()).waitFor();
+	}
+
+	/**
+	 * Close all of our open sessions
+	 */
+	public static void closeAll() {
+		sessions.values().forEach(SSHSession::close);
+		sessions.clear();
+	}
+}
@@ -0,0 +1,21 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.iface;
+
+import java.io.IOException;
+
+/**
+ * Something which can write out a (bash) script, a piece at a time, so we
+ * never have to hold a whole script in memory.
+ */
+@FunctionalInterface
+public interface IScript {
+
+	void emit(Appendable out) throws IOException;
+
+}
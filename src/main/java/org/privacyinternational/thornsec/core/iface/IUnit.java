@@ -1,5 +1,7 @@
 package org.privacyinternational.thornsec.core.iface;
 
+import java.io.IOException;
+
 public interface IUnit  {
 	
 	String getLabel();
@@ -10,4 +12,19 @@ public interface IUnit  {
 
 	String genDryRun();
 
-}
\ No newline at end of file
+	/**
+	 * Write this unit's audit straight out, rather than building it as a String
+	 */
+	void emitAudit(Appendable out, boolean quiet) throws IOException;
+
+	/**
+	 * Write this unit's config straight out, rather than building it as a String
+	 */
+	void emitConfig(Appendable out) throws IOException;
+
+	/**
+	 * Write this unit's dry run straight out, rather than building it as a String
+	 */
+	void emitDryRun(Appendable out) throws IOException;
+
+}
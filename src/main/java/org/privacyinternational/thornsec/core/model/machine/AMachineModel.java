@@ -69,6 +69,7 @@ public abstract class AMachineModel extends AModel {
 	private Boolean throttled;
 
 	private Set<TrafficRule> firewallRules;
+	private Integer ruleWeight;
 	private Set<IPAddress> externalIPs;
 
 	AMachineModel(AMachineData myData, NetworkModel networkModel) throws AThornSecException {
@@ -83,8 +84,14 @@ public abstract class AMachineModel extends AModel {
 		setFirewallFromData(myData);
 	}
 
+	@Override
+	public AMachineData getData() {
+		return (AMachineData) super.getData();
+	}
+
 	private void setFirewallFromData(AMachineData myData) {
 		this.firewallRules = myData.getTrafficRules();
+		this.ruleWeight = myData.getRuleWeight().orElse(0);
 
 		//assertNotNull(this.firewallRules);
 	}
@@ -177,6 +184,8 @@ public abstract class AMachineModel extends AModel {
 
 	public final void addType(MachineType type, AMachine profile) {
 		this.types.put(type, profile);
+
+		getNetworkModel().indexMachineType(this, type);
 	}
 
 	public final void addNetworkInterface(NetworkInterfaceModel ifaceModel) {
@@ -317,6 +326,8 @@ public abstract class AMachineModel extends AModel {
 		}
 
 		this.types.put(type, profile);
+
+		getNetworkModel().indexMachineType(this, type);
 	}
 	
 	public final Map<MachineType, AProfile> getTypes() {
@@ -335,6 +346,14 @@ public abstract class AMachineModel extends AModel {
 		return this.firewallRules;
 	}
 
+	/**
+	 * @return how often we expect this machine's firewall rules to be hit,
+	 * 		relative to everyone else's (higher is more often)
+	 */
+	public Integer getRuleWeight() {
+		return this.ruleWeight;
+	}
+
 	/**
 	 * Add a TCP egress (outbound/Internet) firewall rule to this machine
 	 * @param destination a HostName representing the destination as either a
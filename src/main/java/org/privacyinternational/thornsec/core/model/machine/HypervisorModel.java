@@ -9,9 +9,11 @@ package org.privacyinternational.thornsec.core.model.machine;
 
 import java.io.File;
 import java.util.LinkedHashSet;
+import java.util.Optional;
 import java.util.Set;
 import org.privacyinternational.thornsec.core.data.machine.HypervisorData;
 import org.privacyinternational.thornsec.core.data.machine.ServerData;
+import org.privacyinternational.thornsec.core.data.machine.ServerData.GuestOS;
 import org.privacyinternational.thornsec.core.exception.AThornSecException;
 import org.privacyinternational.thornsec.core.exception.runtime.InvalidMachineModelException;
 import org.privacyinternational.thornsec.core.model.network.NetworkModel;
@@ -33,6 +35,99 @@ public class HypervisorModel extends ServerModel {
 		return getData().getVmBase().orElse(new File("/srv/ThornSec"));
 	}
 
+	/**
+	 * @return whether our Services' boot disks should be cloned from a golden
+	 * 			image, rather than each Service installing its own OS. Defaults
+	 * 			to false
+	 */
+	public Boolean useGoldenImages() {
+		return getData().getGoldenImages().orElse(false);
+	}
+
+	/**
+	 * Get the golden image for a given OS. This is installed once, then
+	 * snapshotted, and every Service's boot disk is a differencing child of it
+	 *
+	 * @param os the guest OS
+	 * @return the golden image's base VDI
+	 */
+	public File getGoldenImage(GuestOS os) {
+		return new File(getVMBase().getAbsolutePath() + "/disks/golden/" + os.name().toLowerCase() + "/base.vdi");
+	}
+
+	/**
+	 * @param os the guest OS
+	 * @return the (preseeded) install ISO the golden image is built from
+	 */
+	public File getGoldenInstallIso(GuestOS os) {
+		return new File(getVMBase().getAbsolutePath() + "/iso/golden/" + os.name().toLowerCase() + "/install.iso");
+	}
+
+	/**
+	 * @param os the guest OS
+	 * @return the preseed file the golden image's install ISO should be built
+	 * 			with
+	 */
+	public File getGoldenPreseed(GuestOS os) {
+		return new File(getGoldenInstallIso(os).getParent() + "/preseed.cfg");
+	}
+
+	/**
+	 * @param service the Service's label
+	 * @return the cloud-init seed ISO which personalises the Service's clone
+	 * 			of its golden image on first boot
+	 */
+	public File getSeedIso(String service) {
+		return new File(getVMBase().getAbsolutePath() + "/iso/seed/" + service + "/seed.iso");
+	}
+
+	/**
+	 * @return optionally the physical RAM we have to share between our
+	 * 			Services, in MB
+	 */
+	public Optional<Integer> getRAMCapacity() {
+		return getData().getCapacity()
+						.flatMap(capacity -> capacity.getRAM());
+	}
+
+	/**
+	 * @return optionally the number of CPU threads we have to share between
+	 * 			our Services
+	 */
+	public Optional<Integer> getCPUCapacity() {
+		return getData().getCapacity()
+						.flatMap(capacity -> capacity.getCPUs());
+	}
+
+	/**
+	 * @return the RAM kept back for the HyperVisor itself, in MB, or 1024 if
+	 * 			not set
+	 */
+	public Integer getReservedRAM() {
+		return getData().getCapacity()
+						.flatMap(capacity -> capacity.getReservedRAM())
+						.orElse(1024);
+	}
+
+	/**
+	 * @return how far we'll overcommit RAM, or 1.0 (not at all) if not set
+	 */
+	public Double getRAMOvercommit() {
+		return getData().getCapacity()
+						.flatMap(capacity -> capacity.getRAMOvercommit())
+						.orElse(1.0);
+	}
+
+	/**
+	 * @return how many virtual CPUs we'll give out per thread, or 4.0 if not
+	 * 			set
+	 */
+	public Double getCPUOvercommit() {
+		return getData().getCapacity()
+						.flatMap(capacity -> capacity.getCPUOvercommit())
+						.orElse(4.0);
+	}
+
 	public Set<ServiceModel> getServices() throws InvalidMachineModelException {
 		Set<ServiceModel> services = new LinkedHashSet<>();
 		
@@ -12,9 +12,9 @@ import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
-import com.metapossum.utils.scanner.reflect.ClassesInPackageScanner;
 import org.privacyinternational.thornsec.core.data.machine.AMachineData.MachineType;
 import org.privacyinternational.thornsec.core.data.machine.ServerData;
+import org.privacyinternational.thornsec.core.data.machine.ServerData.FirewallBackend;
 import org.privacyinternational.thornsec.core.data.machine.ServerData.GuestOS;
 import org.privacyinternational.thornsec.core.exception.AThornSecException;
 import org.privacyinternational.thornsec.core.exception.data.machine.InvalidMachineException;
@@ -26,9 +26,11 @@ import org.privacyinternational.thornsec.core.iface.IUnit;
 import org.privacyinternational.thornsec.core.model.network.NetworkModel;
 import org.privacyinternational.thornsec.core.model.network.UserModel;
 import org.privacyinternational.thornsec.core.profile.AProfile;
+import org.privacyinternational.thornsec.core.profile.ProfileRegistry;
 import org.privacyinternational.thornsec.core.unit.SimpleUnit;
 import org.privacyinternational.thornsec.core.unit.fs.FileAppendUnit;
 import org.privacyinternational.thornsec.profile.firewall.AFirewallProfile;
+import org.privacyinternational.thornsec.profile.firewall.router.NftablesFirewall;
 import org.privacyinternational.thornsec.profile.firewall.router.ShorewallFirewall;
 import org.privacyinternational.thornsec.profile.guest.AOS;
 import org.privacyinternational.thornsec.profile.guest.Alpine;
@@ -66,12 +68,34 @@ public class ServerModel extends AMachineModel {
 
 		this.runningProcesses = new Processes(this);
 		this.users = new UserAccounts(this);
-		this.firewall = new ShorewallFirewall(this);
+		this.firewall = buildFirewall();
 
 		this.iso = null;
 		this.isoSHA512 = null;
 	}
 
+	/**
+	 * Build whichever firewall this machine's data asks for, defaulting to
+	 * Shorewall
+	 *
+	 * @throws InvalidMachineException if a backend is given for anything other
+	 * 			than a Router, as it's only a Router's firewall which can change
+	 */
+	private AFirewallProfile buildFirewall() throws InvalidMachineException {
+		// We're called before init() has added our types, so go by our data
+		if (getData().getFirewallBackend().isPresent() && !getData().isType(MachineType.ROUTER)) {
+			throw new InvalidMachineException(getLabel() + " has a firewall_backend set, but only a router's firewall can be changed");
+		}
+
+		switch (getData().getFirewallBackend().orElse(FirewallBackend.SHOREWALL)) {
+			case NFTABLES:
+				return new NftablesFirewall(this);
+			case SHOREWALL:
+			default:
+				return new ShorewallFirewall(this);
+		}
+	}
+
 	@Override
 	public ServerData getData() {
 		return (ServerData) super.getData();
@@ -91,20 +115,7 @@ public class ServerModel extends AMachineModel {
 	}
 
 	protected AProfile reflectedProfile(String profile) throws InvalidProfileException {
-		Collection<Class<?>> classes;
-		try {
-			classes = new ClassesInPackageScanner()
-					.setResourceNameFilter((packageName, fileName) ->
-							fileName.equals(profile + ".class"))
-					.scan("org.privacyinternational.thornsec.profile");
-
-			return (AProfile) Class.forName(classes.iterator().next().getName())
-					.getDeclaredConstructor(ServerModel.class)
-					.newInstance(this);
-		} catch (Exception e) {
-			throw new InvalidProfileException("Profile " + profile + " threw an"
-					+ " exception\n\n" + e.getLocalizedMessage());
-		}
+		return ProfileRegistry.newProfile(profile, this);
 	}
 
 	private void addAdmins() throws InvalidUserException {
@@ -254,6 +265,15 @@ public class ServerModel extends AMachineModel {
 		return getData().getCPUs().orElse(2);
 	}
 
+	/**
+	 * Get the amount of RAM allocated to this machine
+	 * @return optionally the amount of RAM in MB, or 2048 if not set
+	 */
+	public Integer getRAM() {
+		return getData().getRAM()
+						.orElse(2048);
+	}
+
 	protected void setOS(GuestOS os) throws AThornSecException {
 		if (GuestOS.debian.contains(os)) {
 			this.os = new Debian(this);
@@ -42,8 +42,8 @@ public class ServiceModel extends ServerModel {
 	private Map<String, ADiskModel> disks;
 	private HypervisorModel hypervisor;
 
-	private static Integer DEFAULT_BOOT_DISK_SIZE = (8 * 1024); //8GB
-	private static Integer DEFAULT_DATA_DISK_SIZE = (20 * 1024); //20GB
+	public static final Integer DEFAULT_BOOT_DISK_SIZE = (8 * 1024); //8GB
+	private static final Integer DEFAULT_DATA_DISK_SIZE = (20 * 1024); //20GB
 
 	public ServiceModel(ServerData myData, NetworkModel networkModel)
 			throws AThornSecException {
@@ -93,12 +93,29 @@ public class ServiceModel extends ServerModel {
 		}
 
 		if (getDisk("boot").isEmpty()) {
-			File bootDiskPath = new File(hypervisor.getVMBase().getAbsolutePath() + "/disks/boot/" + getLabel() + "/boot.vmdk");
-			addDisk(new HardDiskModel("boot", bootDiskPath));
+			final HardDiskModel boot;
+			if (hypervisor.useGoldenImages()) {
+				// Our boot disk is a differencing child of our HyperVisor's golden
+				// image, so it only holds what's changed since the OS was installed
+				File bootDiskPath = new File(hypervisor.getVMBase().getAbsolutePath() + "/disks/boot/" + getLabel() + "/boot.vdi");
+				boot = new HardDiskModel("boot", bootDiskPath);
+				boot.setFormat(Format.VDI);
+				boot.setDiffParent(hypervisor.getGoldenImage(getOS()));
+			}
+			else {
+				File bootDiskPath = new File(hypervisor.getVMBase().getAbsolutePath() + "/disks/boot/" + getLabel() + "/boot.vmdk");
+				boot = new HardDiskModel("boot", bootDiskPath);
+				boot.setFormat(Format.VMDK);
+			}
+			boot.setSize(DEFAULT_BOOT_DISK_SIZE);
+			addDisk(boot);
 		}
 		if (getDisk("data").isEmpty()) {
 			File dataDiskPath = new File(this.hypervisor.getVMBase().getAbsolutePath() + "/disks/data/" + getLabel() + "/data.vmdk");
-			addDisk(new HardDiskModel("data", dataDiskPath));
+			HardDiskModel data = new HardDiskModel("data", dataDiskPath);
+			data.setFormat(Format.VMDK);
+			data.setSize(DEFAULT_DATA_DISK_SIZE);
+			addDisk(data);
 		}
 	}
 
@@ -138,15 +155,6 @@ public class ServiceModel extends ServerModel {
 		return (ServiceData) super.getData();
 	}
 
-	/**
-	 * Get the amount of RAM allocated to this machine
-	 * @return optionally the amount of RAM in MB, or 2048 if not set
-	 */
-	public Integer getRAM() {
-		return getData().getRAM()
-						.orElse(2048);
-	}
-
 	/**
 	 * Get the CPU execution cap for this machine
 	 * @return optionally the execution cap in %, or 100 if not set
@@ -156,6 +164,15 @@ public class ServiceModel extends ServerModel {
 						.orElse(100);
 	}
 
+	/**
+	 * @return whether this Service has to stay on the HyperVisor it's declared
+	 * 			under, or true if not set
+	 */
+	public Boolean isPinned() {
+		return getData().isPinned()
+						.orElse(true);
+	}
+
 	public Collection<? extends IUnit> getUserPasswordUnits() {
 		// TODO Auto-generated method stub
 		return new ArrayList<>();
@@ -0,0 +1,176 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.model.network;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.privacyinternational.thornsec.core.data.machine.AMachineData.MachineType;
+import org.privacyinternational.thornsec.core.exception.data.InvalidIPAddressException;
+import org.privacyinternational.thornsec.core.model.machine.AMachineModel;
+import org.privacyinternational.thornsec.core.model.machine.configuration.networking.NetworkInterfaceModel;
+import inet.ipaddr.IPAddress;
+import inet.ipaddr.ipv4.IPv4Address;
+
+/**
+ * This class hands out (IPv4) addresses from a given subnet.
+ *
+ * Used addresses are kept in a bitmap, indexed by their offset from the start
+ * of the subnet, so checking or claiming an address is O(1), and handing out
+ * the next free address is O(1) amortised.
+ *
+ * If an address is claimed more than once, that's recorded as a conflict
+ * rather than thrown straight away, so you can decide how much you care.
+ */
+public class IPAddressAllocator {
+
+	private final IPAddress subnet;
+	private final long base;
+	private final long size;
+
+	private final BitSet used;
+	private final Set<IPAddress> conflicts;
+
+	// Where to start looking for the next free address
+	private long next;
+
+	/**
+	 * @param subnet the subnet to hand addresses out from
+	 * @throws InvalidIPAddressException if the subnet isn't IPv4
+	 */
+	public IPAddressAllocator(IPAddress subnet) throws InvalidIPAddressException {
+		if (!subnet.isIPv4()) {
+			throw new InvalidIPAddressException(subnet + " isn't an IPv4 subnet, so we can't allocate from it");
+		}
+
+		this.subnet = subnet.toPrefixBlock();
+		this.base = this.subnet.getLower().toIPv4().longValue();
+		this.size = this.subnet.getUpper().toIPv4().longValue() - this.base + 1;
+
+		this.used = new BitSet();
+		this.conflicts = new LinkedHashSet<>();
+
+		// The first host in a subnet belongs to its router, so start after it
+		this.next = 2;
+	}
+
+	/**
+	 * Build allocators for all of a network's subnets, claiming every address
+	 * already on every machine's interfaces.
+	 *
+	 * @param network the network
+	 * @return an allocator per subnet
+	 * @throws InvalidIPAddressException if any of the subnets aren't IPv4
+	 */
+	public static Map<MachineType, IPAddressAllocator> fromNetwork(NetworkModel network) throws InvalidIPAddressException {
+		final Map<MachineType, IPAddressAllocator> allocators = new EnumMap<>(MachineType.class);
+
+		for (Map.Entry<MachineType, IPAddress> subnet : network.getSubnets().entrySet()) {
+			allocators.put(subnet.getKey(), new IPAddressAllocator(subnet.getValue()));
+		}
+
+		for (AMachineModel machine : network.getMachines().values()) {
+			final Collection<NetworkInterfaceModel> nics = machine.getNetworkInterfaces();
+			if (nics == null) {
+				continue;
+			}
+
+			for (NetworkInterfaceModel nic : nics) {
+				if (nic.getAddresses().isEmpty()) {
+					continue;
+				}
+
+				for (IPAddress address : nic.getAddresses().get()) {
+					for (IPAddressAllocator allocator : allocators.values()) {
+						if (allocator.contains(address)) {
+							allocator.claim(address);
+						}
+					}
+				}
+			}
+		}
+
+		return allocators;
+	}
+
+	/**
+	 * @return whether a given address is within our subnet
+	 */
+	public boolean contains(IPAddress address) {
+		return address.isIPv4() && this.subnet.contains(address.withoutPrefixLength());
+	}
+
+	/**
+	 * @return whether a given address has already been claimed
+	 */
+	public boolean isAssigned(IPAddress address) {
+		return contains(address) && this.used.get((int) getOffset(address));
+	}
+
+	/**
+	 * Claim a given address, e.g. because it's been statically assigned.
+	 *
+	 * @param address the address to claim
+	 * @return false if it had already been claimed (and is now a conflict),
+	 * 		true otherwise
+	 * @throws InvalidIPAddressException if the address isn't in our subnet
+	 */
+	public boolean claim(IPAddress address) throws InvalidIPAddressException {
+		if (!contains(address)) {
+			throw new InvalidIPAddressException(address + " isn't in " + this.subnet);
+		}
+
+		final int offset = (int) getOffset(address);
+
+		if (this.used.get(offset)) {
+			this.conflicts.add(address.withoutPrefixLength());
+			return false;
+		}
+
+		this.used.set(offset);
+		return true;
+	}
+
+	/**
+	 * Hand out the next free address in our subnet
+	 *
+	 * @return the address, which is now claimed
+	 * @throws InvalidIPAddressException if the subnet is full
+	 */
+	public IPAddress allocate() throws InvalidIPAddressException {
+		final long offset = this.used.nextClearBit((int) this.next);
+
+		// The last address in a subnet is its broadcast
+		if (offset >= this.size - 1) {
+			throw new InvalidIPAddressException("There are no free addresses left in " + this.subnet);
+		}
+
+		this.used.set((int) offset);
+		this.next = offset + 1;
+
+		return new IPv4Address((int) (this.base + offset), this.subnet.getNetworkPrefixLength());
+	}
+
+	/**
+	 * @return any addresses which have been claimed more than once
+	 */
+	public Set<IPAddress> getConflicts() {
+		return this.conflicts;
+	}
+
+	public IPAddress getSubnet() {
+		return this.subnet;
+	}
+
+	private long getOffset(IPAddress address) {
+		return address.toIPv4().longValue() - this.base;
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.model.network;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import org.privacyinternational.thornsec.core.data.machine.AMachineData.MachineType;
+import org.privacyinternational.thornsec.core.exception.AThornSecException;
+import org.privacyinternational.thornsec.core.exception.runtime.InvalidMachineModelException;
+import org.privacyinternational.thornsec.core.model.machine.AMachineModel;
+import org.privacyinternational.thornsec.core.model.machine.HypervisorModel;
+import org.privacyinternational.thornsec.core.model.machine.ServiceModel;
+
+/**
+ * This class represents the dependencies between the machines on a network,
+ * and lets us walk across them in parallel.
+ *
+ * Most of our machines don't care about each other at all, so there's no
+ * reason to do them one at a time. There are two exceptions:
+ *
+ * - HyperVisors build their VMs from their Services, so have to wait for them
+ * - Routers build their firewall, DHCP & DNS from every other machine on the
+ *   network, so they have to wait for everything else
+ *
+ * A machine's task is only ever started once all of its dependencies' tasks
+ * have finished.
+ */
+class MachineGraph {
+
+	/**
+	 * Something to do to a machine, which may throw
+	 */
+	@FunctionalInterface
+	interface MachineTask {
+		void run(AMachineModel machine) throws AThornSecException;
+	}
+
+	private final Map<AMachineModel, Set<AMachineModel>> dependencies;
+
+	MachineGraph(Collection<AMachineModel> machines) throws InvalidMachineModelException {
+		this.dependencies = new LinkedHashMap<>();
+
+		for (AMachineModel machine : machines) {
+			Set<AMachineModel> machineDependencies = new LinkedHashSet<>();
+
+			if (isRouter(machine)) {
+				machines.stream()
+						.filter(other -> !isRouter(other))
+						.forEach(machineDependencies::add);
+			}
+			else if (machine instanceof HypervisorModel) {
+				// Routers can be Services, but they're always built last
+				for (ServiceModel service : ((HypervisorModel) machine).getServices()) {
+					if (!isRouter(service)) {
+						machineDependencies.add(service);
+					}
+				}
+			}
+
+			this.dependencies.put(machine, machineDependencies);
+		}
+	}
+
+	/**
+	 * The graph is built before any machine is init()ed, and it's init() which
+	 * gives a model its types, so go by what its data declares instead
+	 */
+	private static boolean isRouter(AMachineModel machine) {
+		return machine.getData().isType(MachineType.ROUTER);
+	}
+
+	/**
+	 * Run a given task across every machine in the graph, using as many threads
+	 * as we have processors. Blocks until every task has finished.
+	 *
+	 * @param task the task to run against each machine
+	 * @throws AThornSecException the first exception thrown by a task
+	 */
+	void walk(MachineTask task) throws AThornSecException {
+		final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		final Map<AMachineModel, CompletableFuture<Void>> tasks = new LinkedHashMap<>();
+
+		try {
+			for (AMachineModel machine : this.dependencies.keySet()) {
+				schedule(machine, task, pool, tasks, new HashSet<>());
+			}
+
+			CompletableFuture.allOf(tasks.values().toArray(new CompletableFuture<?>[0])).join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof AThornSecException) {
+				throw (AThornSecException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	private CompletableFuture<Void> schedule(AMachineModel machine, MachineTask task, ForkJoinPool pool,
+			Map<AMachineModel, CompletableFuture<Void>> tasks, Set<AMachineModel> visiting)
+			throws InvalidMachineModelException {
+		if (tasks.containsKey(machine)) {
+			return tasks.get(machine);
+		}
+
+		if (!visiting.add(machine)) {
+			throw new InvalidMachineModelException(machine.getLabel() + " ends up depending on itself");
+		}
+
+		Collection<CompletableFuture<Void>> waitingOn = new LinkedHashSet<>();
+		for (AMachineModel dependency : this.dependencies.get(machine)) {
+			waitingOn.add(schedule(dependency, task, pool, tasks, visiting));
+		}
+
+		CompletableFuture<Void> future = CompletableFuture
+				.allOf(waitingOn.toArray(new CompletableFuture<?>[0]))
+				.thenRunAsync(() -> {
+					try {
+						task.run(machine);
+					}
+					catch (AThornSecException e) {
+						throw new CompletionException(e);
+					}
+				}, pool);
+
+		visiting.remove(machine);
+		tasks.put(machine, future);
+
+		return future;
+	}
+}
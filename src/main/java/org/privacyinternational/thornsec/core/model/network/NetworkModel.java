@@ -16,15 +16,24 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.privacyinternational.thornsec.core.data.machine.AMachineData;
@@ -43,8 +52,10 @@ import org.privacyinternational.thornsec.core.exception.data.NoValidUsersExcepti
 import org.privacyinternational.thornsec.core.exception.runtime.InvalidMachineModelException;
 import org.privacyinternational.thornsec.core.exception.runtime.InvalidServerModelException;
 import org.privacyinternational.thornsec.core.exception.runtime.InvalidTypeException;
+import org.privacyinternational.thornsec.core.exec.FleetExec;
 import org.privacyinternational.thornsec.core.exec.ManageExec;
 import org.privacyinternational.thornsec.core.exec.network.OpenKeePassPassphrase;
+import org.privacyinternational.thornsec.core.iface.IScript;
 import org.privacyinternational.thornsec.core.iface.IUnit;
 import org.privacyinternational.thornsec.core.model.machine.AMachineModel;
 import org.privacyinternational.thornsec.core.model.machine.DedicatedModel;
@@ -72,6 +83,10 @@ public class NetworkModel {
 	private NetworkData data;
 	private Map<String, UserModel> users;
 	private Map<String, AMachineModel> machines;
+	private final Map<AMachineModel, Integer> machineOrder;
+	private final Map<MachineType, Set<AMachineModel>> machinesByType;
+	private final Map<MachineType, Set<AMachineModel>> machinesByTypeViews;
+	private final Map<MachineType, AtomicInteger> machineCounts;
 	private Map<String, Collection<IUnit>> networkUnits;
 
 	private Map<MachineType, IPAddress> defaultSubnets;
@@ -83,6 +98,19 @@ public class NetworkModel {
 		
 		this.machines = null;
 		this.networkUnits = null;
+
+		// Every type gets its set up front, so the index itself never changes
+		// shape once we've started building machines
+		this.machineOrder = new HashMap<>();
+		this.machinesByType = new EnumMap<>(MachineType.class);
+		this.machinesByTypeViews = new EnumMap<>(MachineType.class);
+		this.machineCounts = new EnumMap<>(MachineType.class);
+		for (MachineType type : MachineType.values()) {
+			final Set<AMachineModel> machines = new ConcurrentSkipListSet<>(Comparator.comparing(this.machineOrder::get));
+			this.machinesByType.put(type, machines);
+			this.machinesByTypeViews.put(type, Collections.unmodifiableSet(machines));
+			this.machineCounts.put(type, new AtomicInteger());
+		}
 		
 		populateNetworkDefaults();
 	}
@@ -128,30 +156,40 @@ public class NetworkModel {
 		buildMachines();
 		buildUsers();
 
+		final MachineGraph graph = new MachineGraph(getMachines().values());
+
 		// We want to initialise the whole network first before we start getting units
-		for (AMachineModel machine : getMachines().values()) {
-			machine.init();
-		}
+		graph.walk(machine -> machine.init());
+
+		// Build everyone's units side-by-side, where we can. The graph makes sure
+		// Routers go last, as they rely on the rest of the network being inited
+		// & configured
+		final Map<AMachineModel, Collection<IUnit>> units = new ConcurrentHashMap<>();
+		graph.walk(machine -> {
+			if (machine.isType(MachineType.DEVICE) || machine.isType(MachineType.SERVER)
+					|| machine.isType(MachineType.ROUTER)) {
+				units.put(machine, machine.getUnits());
+			}
+		});
 
-		// Now, step through our devices and run through their units.
+		// Now, step through our devices and put their units in.
 		for (final AMachineModel device : getMachines(MachineType.DEVICE)) {
-			putUnits(label, device.getUnits());
+			putUnits(label, units.get(device));
 		}
 
-		// We want to separate the Routers out; they need to be the very last
-		// thing configured as it relies on the rest of the network being inited
-		// & configured
+		// We want to separate the Routers out, keeping them in the same order
+		// they've always been in
 		for (final AMachineModel server : getMachines(MachineType.SERVER)) {
 			if (server.isType(MachineType.ROUTER)) {
 				continue;
 			}
 
-			putUnits(server.getLabel(), server.getUnits());
+			putUnits(server.getLabel(), units.get(server));
 		}
 
-		// Finally, let's build our Routers
+		// Finally, let's add our Routers
 		for (final AMachineModel router : getMachines(MachineType.ROUTER)) {
-			putUnits(router.getLabel(), router.getUnits());
+			putUnits(router.getLabel(), units.get(router));
 		}
 	}
 
@@ -210,6 +248,29 @@ public class NetworkModel {
 			this.machines = new LinkedHashMap<>();
 		}
 		this.machines.put(machine.getLabel(), machine);
+
+		this.machineOrder.put(machine, this.machineOrder.size());
+		machine.getTypes().keySet().forEach(type -> putMachineType(machine, type));
+	}
+
+	private void putMachineType(AMachineModel machine, MachineType type) {
+		if (this.machinesByType.get(type).add(machine)) {
+			this.machineCounts.get(type).incrementAndGet();
+		}
+	}
+
+	/**
+	 * Keep our index of machines by type up to date. This is called whenever a
+	 * machine gains a type; if it's not been added to the network yet, it'll
+	 * be indexed when it is.
+	 *
+	 * @param machine the machine
+	 * @param type the type it's gained
+	 */
+	public final void indexMachineType(AMachineModel machine, MachineType type) {
+		if (this.machineOrder.containsKey(machine)) {
+			putMachineType(machine, type);
+		}
 	}
 
 	private void putUnits(String label, Collection<IUnit> units) {
@@ -241,15 +302,19 @@ public class NetworkModel {
 
 	/**
 	 * @param type
-	 * @return A map of all machines of a given type, or an empty Set
+	 * @return A read-only view of all machines of a given type (in the order
+	 * 		they were added to the network), or an empty Set
 	 */
 	public Set<AMachineModel> getMachines(MachineType type) {
-		Set<AMachineModel> machines = getMachines().values()
-				.stream()
-				.filter(machine -> machine.isType(type))
-				.collect(Collectors.toSet());
-	
-		return machines;
+		return this.machinesByTypeViews.get(type);
+	}
+
+	/**
+	 * @param type
+	 * @return how many machines of a given type are on our network
+	 */
+	public int getMachineCount(MachineType type) {
+		return this.machineCounts.get(type).get();
 	}
 
 	/**
@@ -266,7 +331,7 @@ public class NetworkModel {
 	public final void auditNonBlock(String server, OutputStream out, InputStream in, boolean quiet) throws InvalidMachineModelException {
 		ManageExec exec = null;
 		try {
-			exec = getManageExec(server, "audit", out, quiet);
+			exec = getManageExec(server, "audit", out, System.err, quiet);
 		} catch (InvalidServerModelException | IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -277,49 +342,41 @@ public class NetworkModel {
 	}
 
 	public final void auditAll(OutputStream out, InputStream in, boolean quiet) throws InvalidMachineModelException {
+		final Map<String, FleetExec.HostJob> jobs = new LinkedHashMap<>();
+
 		for (final AMachineModel server : getMachines(MachineType.SERVER)) {
-			ManageExec exec = null;
-			try {
-				exec = getManageExec(server.getLabel(), "audit", out, quiet);
-			} catch (InvalidServerModelException | IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-			if (exec != null) {
-				exec.manage();
-			}
+			jobs.put(server.getLabel(), (sink, errors) -> getManageExec(server.getLabel(), "audit", sink, errors, quiet));
 		}
+
+		new FleetExec(getAuditConcurrency(), getAuditTimeout()).run(jobs, out);
 	}
 
 	public final void configNonBlock(String server, OutputStream out, InputStream in) throws IOException, InvalidMachineModelException {
-		final ManageExec exec = getManageExec(server, "config", out, false);
+		final ManageExec exec = getManageExec(server, "config", out, System.err, false);
 		if (exec != null) {
 			exec.manage();
 		}
 	}
 
 	public final void dryrunNonBlock(String server, OutputStream out, InputStream in) throws IOException, InvalidMachineModelException {
-		final ManageExec exec = getManageExec(server, "dryrun", out, false);
+		final ManageExec exec = getManageExec(server, "dryrun", out, System.err, false);
 		if (exec != null) {
 			exec.manage();
 		}
 	}
 
-	private final ManageExec getManageExec(String server, String action, OutputStream out, boolean quiet) throws IOException, InvalidMachineModelException {
+	private final ManageExec getManageExec(String server, String action, OutputStream out, OutputStream err, boolean quiet) throws IOException, InvalidMachineModelException {
 		// need to do a series of local checks eg known_hosts or expected
 		// fingerprint
 		final OpenKeePassPassphrase pass = new OpenKeePassPassphrase((ServerModel)getMachineModel(server));
 
-		final String audit = getScript(server, action, quiet);
+		final IScript script = (scriptOut) -> writeScript(server, action, quiet, scriptOut);
 
 		if (action.equals("dryrun")) {
-			try {
-				final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss");
-				final String filename = server + "_" + dateFormat.format(new Date()) + ".sh";
-				final Writer wr = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), "UTF8"));
-				wr.write(audit);
-				wr.flush();
-				wr.close();
+			final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss");
+			final String filename = server + "_" + dateFormat.format(new Date()) + ".sh";
+			try (Writer wr = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), "UTF8"))) {
+				script.emit(wr);
 			} catch (final FileNotFoundException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -336,51 +393,67 @@ public class NetworkModel {
 		// ManageExec exec = new ManageExec(this.getData().getUser(),
 		// pass.getPassphrase(), serverModel.getIP(), this.getData().getSSHPort(server),
 		// audit, out);
-		final ManageExec exec = new ManageExec(((ServerModel)getMachineModel(server)), this, audit, out);
+		final ManageExec exec = new ManageExec(((ServerModel)getMachineModel(server)), this, pass.getPassphrase(), script, out, err);
 		return exec;
 	}
 
-	private String getScript(String server, String action, boolean quiet) {
+	/**
+	 * Write a given server's script out, a unit at a time, so we never have to
+	 * hold the whole thing in memory.
+	 */
+	private void writeScript(String server, String action, boolean quiet, Appendable out) throws IOException {
 		System.out.println("=======================" + getLabel() + ":" + server + "==========================");
-		String line = getHeader(server, action) + "\n";
+		writeHeader(server, action, out);
+		out.append("\n");
 		final Collection<IUnit> units = this.networkUnits.get(server);
 		for (final IUnit unit : units) {
-			line += "#============ " + unit.getLabel() + " =============\n";
-			line += getText(action, unit, quiet) + "\n";
+			out.append("#============ ").append(unit.getLabel()).append(" =============\n");
+			writeText(action, unit, quiet, out);
+			out.append("\n");
 		}
-		line += getFooter(server, action);
-		return line;
+		writeFooter(server, action, out);
 	}
 
-	private String getText(String action, IUnit unit, boolean quiet) {
-		String line = "";
+	private void writeText(String action, IUnit unit, boolean quiet, Appendable out) throws IOException {
 		if (action.equals("audit")) {
-			line = unit.genAudit(quiet);
+			unit.emitAudit(out, quiet);
 		} else if (action.equals("config")) {
-			line = unit.genConfig();
+			unit.emitConfig(out);
 		} else if (action.equals("dryrun")) {
-			line = unit.genConfig();
-			// line = unit.genDryRun();
+			unit.emitConfig(out);
+			// unit.emitDryRun(out);
 		}
-		return line;
 	}
 
-	private String getHeader(String server, String action) {
-		String line = "#!/bin/bash\n";
-		line += "\n";
-		line += "hostname=$(hostname)\n";
-		line += "proceed_audit_passed=1\n";
-		line += "\n";
-		line += "echo \"Started " + action + " ${hostname} with config label: " + server + "\"\n";
-		line += "passed=0; failed=0; fail_string=;";
-		return line;
-	}
-
-	private String getFooter(String server, String action) {
-		String line = "printf \"passed=${passed} failed=${failed}: ${fail_string}\"\n\n";
-		line += "\n";
-		line += "echo \"Finished " + action + " ${hostname} with config label: " + server + "\"";
-		return line;
+	private void writeHeader(String server, String action, Appendable out) throws IOException {
+		out.append("#!/bin/bash\n");
+		out.append("\n");
+		out.append("hostname=$(hostname)\n");
+		out.append("proceed_audit_passed=1\n");
+		out.append("\n");
+		out.append("echo \"Started ").append(action).append(" ${hostname} with config label: ").append(server).append("\"\n");
+		out.append("passed=0; failed=0; fail_string=;");
+		out.append("\n");
+		// Feed our password (if we were given one) to each sudo, rather than
+		// running the whole script as root. It's never exported, so none of the
+		// script's children can see it, and printf is a builtin, so it never
+		// turns up in a process' arguments
+		out.append("if { true <&").append(ManageExec.SUDO_PASS_FD.toString()).append("; } 2>/dev/null; then\n");
+		out.append("\tIFS= read -r -u ").append(ManageExec.SUDO_PASS_FD.toString()).append(" ").append(ManageExec.SUDO_PASS_VAR).append(";\n");
+		out.append("\texec ").append(ManageExec.SUDO_PASS_FD.toString()).append("<&-;\n");
+		out.append("fi\n");
+		out.append("sudo() {\n");
+		out.append("\tif [ -n \"${").append(ManageExec.SUDO_PASS_VAR).append("}\" ]; then\n");
+		out.append("\t\tprintf '%s\\n' \"${").append(ManageExec.SUDO_PASS_VAR).append("}\" | command sudo -S -p '' -v 2>/dev/null;\n");
+		out.append("\tfi\n");
+		out.append("\tcommand sudo \"$@\";\n");
+		out.append("}\n");
+	}
+
+	private void writeFooter(String server, String action, Appendable out) throws IOException {
+		out.append("printf \"passed=${passed} failed=${failed}: ${fail_string}\"\n\n");
+		out.append("\n");
+		out.append("echo \"Finished ").append(action).append(" ${hostname} with config label: ").append(server).append("\"");
 	}
 
 	public void setData(NetworkData data) {
@@ -455,6 +528,50 @@ public class NetworkModel {
 		return getData().doAdBlocking().orElseGet(() -> false);
 	}
 
+	/**
+	 * Local blocklists (hosts files, or lists of domains) to build our
+	 * ad-blocking zone from
+	 * @return the paths to the lists, or an empty collection if not set
+	 */
+	public Collection<Path> getAdBlockLists() {
+		return getData().getAdBlockLists()
+				.map(lists -> lists.stream().map(Paths::get).collect(Collectors.toList()))
+				.orElseGet(ArrayList::new);
+	}
+
+	/**
+	 * How many servers to audit at once
+	 * @return as set in the data, or 4
+	 */
+	public int getAuditConcurrency() {
+		return getData().getAuditConcurrency().orElse(4);
+	}
+
+	/**
+	 * How long to give each server to finish its audit
+	 * @return in seconds, as set in the data, or 600
+	 */
+	public int getAuditTimeout() {
+		return getData().getAuditTimeout().orElse(600);
+	}
+
+	/**
+	 * Whether to order our firewall rules so the most often hit come first
+	 * @return as set in the data, or false
+	 */
+	public Boolean orderFirewallRules() {
+		return getData().getOrderFirewallRules().orElse(false);
+	}
+
+	/**
+	 * An iptables-save -c dump from our router, to work out how often each
+	 * of our firewall rules is actually hit
+	 * @return the path to the dump, if set in the data
+	 */
+	public Optional<Path> getFirewallCounters() {
+		return getData().getFirewallCounters().map(Paths::get);
+	}
+
 	/**
 	 * Whether or not to do build a Guest network that anyone can join
 	 * @return as set in the data, or false
@@ -0,0 +1,367 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.model.network;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+import org.privacyinternational.thornsec.core.data.machine.AMachineData.MachineType;
+import org.privacyinternational.thornsec.core.exception.runtime.InvalidMachineModelException;
+import org.privacyinternational.thornsec.core.model.machine.AMachineModel;
+import org.privacyinternational.thornsec.core.model.machine.HypervisorModel;
+import org.privacyinternational.thornsec.core.model.machine.ServiceModel;
+
+/**
+ * This class checks whether each of our HyperVisors can actually host the
+ * Services declared under it, and works out where our unpinned Services
+ * would best go.
+ *
+ * A HyperVisor's capacity is taken from its "capacity" object. RAM is
+ * checked against what's left once the HyperVisor's own reserved RAM is
+ * taken off, and CPU is checked as virtual CPUs (scaled by each Service's
+ * execution cap) per thread. If a HyperVisor doesn't declare its capacity,
+ * we can't check it, and we won't move anything on to or off of it.
+ *
+ * Suggestions are made by best-fit decreasing: pinned Services stay where
+ * they are, and unpinned Services are placed biggest (by RAM) first, each on
+ * whichever HyperVisor it leaves the least RAM spare on.
+ */
+public class Placement {
+
+	/**
+	 * What we've promised to a given HyperVisor's Services
+	 */
+	private static class Load {
+		private final HypervisorModel hypervisor;
+		private final Collection<ServiceModel> services;
+		private Integer ram;
+		private Double cpus;
+
+		Load(HypervisorModel hypervisor) {
+			this.hypervisor = hypervisor;
+			this.services = new ArrayList<>();
+			this.ram = 0;
+			this.cpus = 0.0;
+		}
+
+		void add(ServiceModel service) {
+			this.services.add(service);
+			this.ram += service.getRAM();
+			this.cpus += getCPUDemand(service);
+		}
+
+		boolean isKnown() {
+			return this.hypervisor.getRAMCapacity().isPresent() && this.hypervisor.getCPUCapacity().isPresent();
+		}
+
+		/**
+		 * @return the RAM available to Services, before any overcommit
+		 */
+		Optional<Integer> getRAMAvailable() {
+			return this.hypervisor.getRAMCapacity()
+						.map(ram -> Math.max(0, ram - this.hypervisor.getReservedRAM()));
+		}
+
+		Optional<Double> getRAMRatio() {
+			return getRAMAvailable().map(available -> (available == 0) ? Double.POSITIVE_INFINITY : this.ram / (double) available);
+		}
+
+		Optional<Double> getCPURatio() {
+			return this.hypervisor.getCPUCapacity().map(cpus -> this.cpus / cpus);
+		}
+
+		/**
+		 * @return how much RAM we'd have left (allowing for overcommit) if we
+		 * 			took on this service, or empty if it won't fit
+		 */
+		Optional<Double> getSpareRAMWith(ServiceModel service) {
+			if (!isKnown()) {
+				return Optional.empty();
+			}
+
+			final Double ramLimit = getRAMAvailable().get() * this.hypervisor.getRAMOvercommit();
+			final Double cpuLimit = this.hypervisor.getCPUCapacity().get() * this.hypervisor.getCPUOvercommit();
+
+			if (this.ram + service.getRAM() > ramLimit || this.cpus + getCPUDemand(service) > cpuLimit) {
+				return Optional.empty();
+			}
+
+			return Optional.of(ramLimit - this.ram - service.getRAM());
+		}
+	}
+
+	private final NetworkModel network;
+	private final Map<String, Load> current;
+	private final Map<String, Load> suggested;
+	private final Map<ServiceModel, HypervisorModel> moves;
+	private final Collection<ServiceModel> unplaceable;
+
+	public Placement(NetworkModel network) throws InvalidMachineModelException {
+		this.network = network;
+		this.current = new LinkedHashMap<>();
+		this.suggested = new LinkedHashMap<>();
+		this.moves = new LinkedHashMap<>();
+		this.unplaceable = new ArrayList<>();
+
+		for (final AMachineModel machine : network.getMachines(MachineType.HYPERVISOR)) {
+			final HypervisorModel hypervisor = (HypervisorModel) machine;
+			final Load load = new Load(hypervisor);
+
+			for (final ServiceModel service : hypervisor.getServices()) {
+				load.add(service);
+			}
+
+			this.current.put(hypervisor.getLabel(), load);
+		}
+
+		suggest();
+	}
+
+	/**
+	 * @return the CPU a service could use, in whole threads
+	 */
+	private static Double getCPUDemand(ServiceModel service) {
+		return service.getCPUs() * service.getCPUExecutionCap() / 100.0;
+	}
+
+	private void suggest() {
+		final List<ServiceModel> toPlace = new ArrayList<>();
+
+		for (final Load load : this.current.values()) {
+			final Load placed = new Load(load.hypervisor);
+
+			for (final ServiceModel service : load.services) {
+				// We can't move anything off a HyperVisor we don't know the size of
+				if (service.isPinned() || !load.isKnown()) {
+					placed.add(service);
+				}
+				else {
+					toPlace.add(service);
+				}
+			}
+
+			this.suggested.put(load.hypervisor.getLabel(), placed);
+		}
+
+		toPlace.sort(Comparator.comparing(ServiceModel::getRAM)
+						.thenComparing(Placement::getCPUDemand)
+						.reversed()
+						.thenComparing(ServiceModel::getLabel));
+
+		for (final ServiceModel service : toPlace) {
+			final String currentLabel = service.getHypervisorLabel();
+
+			Load best = null;
+			Double bestSpare = null;
+			for (final Load load : this.suggested.values()) {
+				final Optional<Double> spare = load.getSpareRAMWith(service);
+
+				if (spare.isEmpty()) {
+					continue;
+				}
+
+				// Best fit, but don't move a service for the sake of it
+				if (best == null || spare.get() < bestSpare
+						|| (spare.get().equals(bestSpare) && load.hypervisor.getLabel().equals(currentLabel))) {
+					best = load;
+					bestSpare = spare.get();
+				}
+			}
+
+			if (best == null) {
+				this.unplaceable.add(service);
+				best = this.suggested.get(currentLabel);
+			}
+
+			best.add(service);
+
+			if (!best.hypervisor.getLabel().equals(currentLabel)) {
+				this.moves.put(service, best.hypervisor);
+			}
+		}
+	}
+
+	/**
+	 * @return whether every HyperVisor can host its Services, as declared
+	 */
+	public boolean isValid() {
+		return this.current.values().stream().allMatch(load -> getProblems(load).isEmpty());
+	}
+
+	/**
+	 * @return the services we'd move, and the HyperVisor we'd move them to
+	 */
+	public Map<ServiceModel, HypervisorModel> getMoves() {
+		return this.moves;
+	}
+
+	private static Collection<String> getProblems(Load load) {
+		final Collection<String> problems = new ArrayList<>();
+
+		if (!load.isKnown()) {
+			return problems;
+		}
+
+		final Double ramRatio = load.getRAMRatio().get();
+		final Double cpuRatio = load.getCPURatio().get();
+
+		if (ramRatio > load.hypervisor.getRAMOvercommit()) {
+			problems.add(String.format("RAM is overcommitted %.2fx, but only %.2fx is allowed."
+					+ " Some of its services won't boot.", ramRatio, load.hypervisor.getRAMOvercommit()));
+		}
+		if (cpuRatio > load.hypervisor.getCPUOvercommit()) {
+			problems.add(String.format("CPU is overcommitted %.2fx, but only %.2fx is allowed.",
+					cpuRatio, load.hypervisor.getCPUOvercommit()));
+		}
+
+		return problems;
+	}
+
+	private static Collection<String> getWarnings(Load load) {
+		final Collection<String> warnings = new ArrayList<>();
+
+		if (!load.isKnown()) {
+			warnings.add("Its capacity isn't set, so it can't be checked. Please add \"ram\" and \"cpus\" to its \"capacity\".");
+			return warnings;
+		}
+
+		final Double ramRatio = load.getRAMRatio().get();
+		final Double cpuRatio = load.getCPURatio().get();
+
+		if (ramRatio > 1.0 && ramRatio <= load.hypervisor.getRAMOvercommit()) {
+			warnings.add(String.format("RAM is overcommitted %.2fx. This is allowed, but expect"
+					+ " swapping or ballooning if its services all get busy.", ramRatio));
+		}
+		if (cpuRatio > 1.0 && cpuRatio <= load.hypervisor.getCPUOvercommit()) {
+			warnings.add(String.format("CPU is overcommitted %.2fx.", cpuRatio));
+		}
+
+		return warnings;
+	}
+
+	private static void appendLoad(StringBuilder report, Load load) {
+		report.append(load.hypervisor.getLabel()).append(": ");
+
+		if (load.isKnown()) {
+			report.append(String.format("RAM %dMB of %dMB (%.2fx, limit %.2fx), CPU %.1f of %d threads (%.2fx, limit %.2fx)",
+					load.ram, load.getRAMAvailable().get(), load.getRAMRatio().get(), load.hypervisor.getRAMOvercommit(),
+					load.cpus, load.hypervisor.getCPUCapacity().get(), load.getCPURatio().get(), load.hypervisor.getCPUOvercommit()));
+		}
+		else {
+			report.append(String.format("RAM %dMB, CPU %.1f threads (capacity unknown)", load.ram, load.cpus));
+		}
+		report.append("\n");
+
+		for (final ServiceModel service : load.services) {
+			report.append("\t- ").append(service.getLabel())
+					.append(String.format(" (%dMB, %d vCPUs @ %d%%)", service.getRAM(), service.getCPUs(), service.getCPUExecutionCap()))
+					.append(service.isPinned() ? " [pinned]" : "")
+					.append("\n");
+		}
+	}
+
+	/**
+	 * @return a human-readable report of our current placement, any problems
+	 * 			with it, and what we'd suggest instead
+	 */
+	public String getReport() {
+		final StringBuilder report = new StringBuilder();
+
+		report.append("Service placement for ").append(this.network.getLabel()).append("\n\n");
+
+		for (final Load load : this.current.values()) {
+			appendLoad(report, load);
+
+			getProblems(load).forEach(problem -> report.append("\t❌ ").append(problem).append("\n"));
+			getWarnings(load).forEach(warning -> report.append("\t⚠ ").append(warning).append("\n"));
+
+			report.append("\n");
+		}
+
+		if (this.moves.isEmpty()) {
+			report.append("No services need moving.\n");
+		}
+		else {
+			report.append("Suggested placement:\n");
+
+			this.moves.forEach((service, hypervisor) -> report.append("\tMove ").append(service.getLabel())
+					.append(" from ").append(service.getHypervisorLabel())
+					.append(" to ").append(hypervisor.getLabel()).append("\n"));
+
+			report.append("\n");
+
+			for (final Load load : this.suggested.values()) {
+				appendLoad(report, load);
+			}
+		}
+
+		this.unplaceable.forEach(service -> report.append("\n❌ ").append(service.getLabel())
+				.append(" doesn't fit on any HyperVisor, so has been left on ")
+				.append(service.getHypervisorLabel()).append(".\n"));
+
+		return report.toString();
+	}
+
+	/**
+	 * Rewrite our network's JSON with the suggested placement applied.
+	 *
+	 * The JSON is as we read it in, so any includes have already been merged
+	 * into it, and have been dropped.
+	 *
+	 * @return the network's JSON, with services moved between HyperVisors
+	 */
+	public JsonObject getRewrittenJSON() {
+		final JsonObject data = this.network.getData().getData();
+		final JsonObject servers = data.getJsonObject("servers");
+
+		// Pull out the services we're moving...
+		final Map<String, JsonObject> moving = new LinkedHashMap<>();
+		this.moves.keySet().forEach(service -> moving.put(service.getLabel(),
+				servers.getJsonObject(service.getHypervisorLabel())
+						.getJsonObject("services")
+						.getJsonObject(service.getLabel())));
+
+		final JsonObjectBuilder newServers = Json.createObjectBuilder();
+		servers.forEach((label, server) -> {
+			final JsonObject serverObject = server.asJsonObject();
+
+			if (!serverObject.containsKey("services")) {
+				newServers.add(label, serverObject);
+				return;
+			}
+
+			final JsonObjectBuilder services = Json.createObjectBuilder();
+			serverObject.getJsonObject("services").forEach((serviceLabel, service) -> {
+				if (!moving.containsKey(serviceLabel)) {
+					services.add(serviceLabel, service);
+				}
+			});
+			// ...and put them back in under their new HyperVisor
+			this.moves.forEach((service, hypervisor) -> {
+				if (hypervisor.getLabel().equals(label)) {
+					services.add(service.getLabel(), moving.get(service.getLabel()));
+				}
+			});
+
+			newServers.add(label, Json.createObjectBuilder(serverObject).add("services", services));
+		});
+
+		return Json.createObjectBuilder(data)
+				.remove("includes")
+				.add("servers", newServers)
+				.build();
+	}
+}
@@ -8,9 +8,6 @@
 package org.privacyinternational.thornsec.core.model.network;
 
 import java.io.IOException;
-import java.io.StringReader;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -18,10 +15,9 @@ import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
-import javax.json.Json;
 import javax.json.JsonObject;
-import javax.json.JsonReader;
 import javax.json.JsonValue;
+import org.privacyinternational.thornsec.core.data.JsonLoader;
 import org.privacyinternational.thornsec.core.data.network.NetworkData;
 
 import org.privacyinternational.thornsec.core.exception.AThornSecException;
@@ -49,24 +45,17 @@ public class ThornsecModel {
 	 * @throws ADataException 
 	 */
 	public void read(String filePath) throws ADataException {
-		String rawText = null;
 		Path configFilePath = Paths.get(filePath);
+		JsonObject networks = null;
 
-		// Start by stripping comments out of the JSON
+		// Comments are stripped out of the JSON as it's read in
 		try {
-			byte[] raw = Files.readAllBytes(configFilePath);
-			rawText = new String(raw, StandardCharsets.UTF_8);
-			rawText = rawText.replaceAll("(?:/\\*(?:[^*]|(?:\\*+[^*/]))*\\*+/)|(?://.*)", "");
+			networks = JsonLoader.read(configFilePath);
 		}
 		catch (IOException e) {
 			throw new InvalidJSONException("Unable to read the file at " + filePath);
 		}
 
-		JsonReader jsonReader = null;
-		JsonObject networks = null;
-		jsonReader = Json.createReader(new StringReader(rawText));
-		networks = jsonReader.readObject();
-
 		for (final Entry<String, JsonValue> network : networks.entrySet()) {
 			final NetworkData networkData = new NetworkData(network.getKey());
 			networkData.read((JsonObject) network.getValue(), configFilePath);
@@ -0,0 +1,115 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.profile;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import com.metapossum.utils.scanner.reflect.ClassesInPackageScanner;
+import org.privacyinternational.thornsec.core.exception.runtime.InvalidProfileException;
+import org.privacyinternational.thornsec.core.model.machine.ServerModel;
+
+/**
+ * This class is an index of the profiles we know how to build, keyed by
+ * their simple class name (as they appear in our JSON).
+ *
+ * We only scan the classpath the first time we're asked for a profile, and
+ * only look up each profile's constructor the first time it's asked for. After
+ * that, building a profile is just a map lookup and a constructor call.
+ */
+public final class ProfileRegistry {
+	private static final String PROFILE_PACKAGE = "org.privacyinternational.thornsec.profile";
+
+	private static final Map<String, Constructor<?>> constructors = new ConcurrentHashMap<>();
+
+	// Every profile class on our classpath. If two profiles share a name, the
+	// first one the scanner finds wins.
+	private static volatile Map<String, Class<?>> classes = null;
+
+	private ProfileRegistry() {
+	}
+
+	private static Map<String, Class<?>> getClasses() throws InvalidProfileException {
+		if (classes == null) {
+			synchronized (ProfileRegistry.class) {
+				if (classes == null) {
+					classes = scan();
+				}
+			}
+		}
+
+		return classes;
+	}
+
+	private static Map<String, Class<?>> scan() throws InvalidProfileException {
+		final Map<String, Class<?>> scanned = new LinkedHashMap<>();
+
+		try {
+			new ClassesInPackageScanner()
+					.setResourceNameFilter((packageName, fileName) ->
+							fileName.endsWith(".class") && !fileName.contains("$"))
+					.scan(PROFILE_PACKAGE)
+					.forEach(clazz -> scanned.putIfAbsent(clazz.getSimpleName(), clazz));
+		} catch (IOException e) {
+			throw new InvalidProfileException("Unable to find the profiles on the classpath\n\n"
+					+ e.getLocalizedMessage());
+		}
+
+		return Collections.unmodifiableMap(scanned);
+	}
+
+	/**
+	 * Build a new instance of a given profile on a given server
+	 *
+	 * @param profile the profile's (simple) class name
+	 * @param server the server to build it on
+	 * @return the new profile
+	 * @throws InvalidProfileException if the profile doesn't exist, or blew up
+	 */
+	public static AProfile newProfile(String profile, ServerModel server) throws InvalidProfileException {
+		final Constructor<?> constructor = getConstructor(profile);
+
+		try {
+			return (AProfile) constructor.newInstance(server);
+		} catch (InvocationTargetException e) {
+			throw new InvalidProfileException("Profile " + profile + " threw an"
+					+ " exception\n\n" + e.getCause().getLocalizedMessage());
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			throw new InvalidProfileException("Profile " + profile + " threw an"
+					+ " exception\n\n" + e.getLocalizedMessage());
+		}
+	}
+
+	private static Constructor<?> getConstructor(String profile) throws InvalidProfileException {
+		Constructor<?> constructor = constructors.get(profile);
+
+		if (constructor != null) {
+			return constructor;
+		}
+
+		final Class<?> clazz = getClasses().get(profile);
+		if (clazz == null || !AProfile.class.isAssignableFrom(clazz)) {
+			throw new InvalidProfileException("Profile " + profile + " doesn't exist");
+		}
+
+		try {
+			constructor = clazz.getDeclaredConstructor(ServerModel.class);
+			constructor.setAccessible(true);
+		} catch (NoSuchMethodException e) {
+			throw new InvalidProfileException("Profile " + profile + " can't be built on a server");
+		}
+
+		constructors.putIfAbsent(profile, constructor);
+
+		return constructor;
+	}
+}
@@ -7,6 +7,7 @@
  */
 package org.privacyinternational.thornsec.core.unit;
 
+import java.io.IOException;
 import java.util.regex.Pattern;
 import org.privacyinternational.thornsec.core.iface.IUnit;
 import org.privacyinternational.thornsec.core.model.network.NetworkModel;
@@ -60,64 +61,94 @@ public abstract class AUnit implements IUnit {
 	}
 
 	public String genAudit(boolean quiet) {
-		String auditString = "";
-
-		auditString += this.getAudit();
-		auditString += getLabel() + "_audit\n\n"; 
-		auditString += "if [ \"$" + getLabel() + "_audit_passed\" = \"1\" ] ; then\n";
-		auditString += "\tprintf \"\\e[0;32m ✓ \\e[0m " + getLabel() + "_audit\\n\"\n";
-		auditString += "\t" + "((++passed))\n";
-		auditString += "else\n";
-		if (!quiet)
-			auditString += "\tprintf \"\\e[0;31m ❌ \\e[0m " + getLabel() + "_audit\\n\"\n";
-		auditString += "\t" + "((++failed))\n";
-		auditString += "\t" + "fail_string=\"${fail_string}\\n" + getLabel() + "_audit failed with the message: \\\"${out}\\\"\\n\"\n";
-		auditString += "\t" + "fail_string=\"${fail_string} " + this.getMessage() + "\"\n";
-		auditString += "fi ;";
+		final StringBuilder auditString = new StringBuilder();
+
+		try {
+			emitAudit(auditString, quiet);
+		} catch (IOException e) {
+			// A StringBuilder doesn't throw
+		}
 
-		return auditString;
+		return auditString.toString();
 	}
 
 	public String genConfig() {
-		String configString = this.getAudit();
-		configString += getLabel() + "_audit\n\n";
-		configString += "if [ \"$" + getLabel() + "_audit_passed\" = \"1\" ] ; then\n";
-		configString += "\tprintf \"\\e[0;32m ✓ \\e[0m " + getLabel() + "\\n\"\n";
-		configString += "\t((++passed))\n";
-		configString += "else\n";
-		configString += "\tif [ \"$" + getPrecondition() + "_audit_passed\" = \"1\" ] ; then\n";
-		configString += "\t\tprintf \"\\e[0;31m ❌ \\e[0m " + getLabel() + "... configuring\\n\"\n";
-		configString += "\t\t" + getConfig() + "\n";
-		configString += "\t\tprintf \"...Retesting " + getLabel() + "\\n\"\n";
-		configString += "\t\t" + getLabel() + "_audit\n\n";
-		configString += "\t\tif [ \"$" + getLabel() + "_audit_passed\" = \"1\" ] ; then\n";
-		configString += "\t\t\tprintf \"\\e[0;32m ✓ \\e[0m " + getLabel() + "\\n\"\n";
-		configString += "\t\t\t((++passed))\n";
-		configString += "\t\telse\n";
-		configString += "\t\t\tprintf \"\\e[0;31m ❌ \\e[0m " + getLabel() + "_audit\\n\"\n";
-		configString += "\t\t\t((++failed))\n";
-		configString += "\t\t\tfail_string=\"${fail_string}\\n" + getLabel() + "_audit failed.\\n\"\n";
-		configString += "\t\t\tfail_string=\"${fail_string} " + this.getMessage() + "\"\n";
-		configString += "\t\tfi ;\n";
-		configString += "\telse\n";
-		configString += "\t\t" + "printf \"\\e[0;31m ❌ \\e[0m " + getLabel() + " \\e[0;32mPRECONDITION FAILED\\e[0m " + getPrecondition() + "_audit\\n\"\n";
-		configString += "\tfi ;\n";
-		configString += "fi ;\n";
-		return configString;
+		final StringBuilder configString = new StringBuilder();
+
+		try {
+			emitConfig(configString);
+		} catch (IOException e) {
+			// A StringBuilder doesn't throw
+		}
+
+		return configString.toString();
 	}
 
 	public String genDryRun() {
-		String dryrunString = this.getAudit();
-		dryrunString += "if [ \"$" + getLabel() + "\" != \"1\" ] ; then\n";
-		dryrunString += "\t" + "echo 'fail " + getLabel() + " DRYRUN'\n";
-		dryrunString += "\t" + "echo '" + getConfig() + "';\n";
-		dryrunString += this.getDryRun();
-		dryrunString += "\t" + "failed=$failed+1\n";
-		dryrunString += "\t" + "fail_string=\"$fail_string\n" + getLabel() + "\"\n";
-		dryrunString += "else\n";
-		dryrunString += "\techo pass " + getLabel() + "\n";
-		dryrunString += "\t" + "((pass++))\n";
-		dryrunString += "fi ;\n";
-		return dryrunString;
+		final StringBuilder dryrunString = new StringBuilder();
+
+		try {
+			emitDryRun(dryrunString);
+		} catch (IOException e) {
+			// A StringBuilder doesn't throw
+		}
+
+		return dryrunString.toString();
+	}
+
+	public void emitAudit(Appendable out, boolean quiet) throws IOException {
+		out.append(this.getAudit());
+		out.append(getLabel()).append("_audit\n\n");
+		out.append("if [ \"$").append(getLabel()).append("_audit_passed\" = \"1\" ] ; then\n");
+		out.append("\tprintf \"\\e[0;32m ✓ \\e[0m ").append(getLabel()).append("_audit\\n\"\n");
+		out.append("\t((++passed))\n");
+		out.append("else\n");
+		if (!quiet)
+			out.append("\tprintf \"\\e[0;31m ❌ \\e[0m ").append(getLabel()).append("_audit\\n\"\n");
+		out.append("\t((++failed))\n");
+		out.append("\tfail_string=\"${fail_string}\\n").append(getLabel()).append("_audit failed with the message: \\\"${out}\\\"\\n\"\n");
+		out.append("\tfail_string=\"${fail_string} ").append(this.getMessage()).append("\"\n");
+		out.append("fi ;");
+	}
+
+	public void emitConfig(Appendable out) throws IOException {
+		out.append(this.getAudit());
+		out.append(getLabel()).append("_audit\n\n");
+		out.append("if [ \"$").append(getLabel()).append("_audit_passed\" = \"1\" ] ; then\n");
+		out.append("\tprintf \"\\e[0;32m ✓ \\e[0m ").append(getLabel()).append("\\n\"\n");
+		out.append("\t((++passed))\n");
+		out.append("else\n");
+		out.append("\tif [ \"$").append(getPrecondition()).append("_audit_passed\" = \"1\" ] ; then\n");
+		out.append("\t\tprintf \"\\e[0;31m ❌ \\e[0m ").append(getLabel()).append("... configuring\\n\"\n");
+		out.append("\t\t").append(getConfig()).append("\n");
+		out.append("\t\tprintf \"...Retesting ").append(getLabel()).append("\\n\"\n");
+		out.append("\t\t").append(getLabel()).append("_audit\n\n");
+		out.append("\t\tif [ \"$").append(getLabel()).append("_audit_passed\" = \"1\" ] ; then\n");
+		out.append("\t\t\tprintf \"\\e[0;32m ✓ \\e[0m ").append(getLabel()).append("\\n\"\n");
+		out.append("\t\t\t((++passed))\n");
+		out.append("\t\telse\n");
+		out.append("\t\t\tprintf \"\\e[0;31m ❌ \\e[0m ").append(getLabel()).append("_audit\\n\"\n");
+		out.append("\t\t\t((++failed))\n");
+		out.append("\t\t\tfail_string=\"${fail_string}\\n").append(getLabel()).append("_audit failed.\\n\"\n");
+		out.append("\t\t\tfail_string=\"${fail_string} ").append(this.getMessage()).append("\"\n");
+		out.append("\t\tfi ;\n");
+		out.append("\telse\n");
+		out.append("\t\tprintf \"\\e[0;31m ❌ \\e[0m ").append(getLabel()).append(" \\e[0;32mPRECONDITION FAILED\\e[0m ").append(getPrecondition()).append("_audit\\n\"\n");
+		out.append("\tfi ;\n");
+		out.append("fi ;\n");
+	}
+
+	public void emitDryRun(Appendable out) throws IOException {
+		out.append(this.getAudit());
+		out.append("if [ \"$").append(getLabel()).append("\" != \"1\" ] ; then\n");
+		out.append("\techo 'fail ").append(getLabel()).append(" DRYRUN'\n");
+		out.append("\techo '").append(getConfig()).append("';\n");
+		out.append(this.getDryRun());
+		out.append("\tfailed=$failed+1\n");
+		out.append("\tfail_string=\"$fail_string\n").append(getLabel()).append("\"\n");
+		out.append("else\n");
+		out.append("\techo pass ").append(getLabel()).append("\n");
+		out.append("\t((pass++))\n");
+		out.append("fi ;\n");
 	}
 }
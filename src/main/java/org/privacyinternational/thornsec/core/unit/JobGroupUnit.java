@@ -0,0 +1,84 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.unit;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.privacyinternational.thornsec.core.iface.IUnit;
+
+/**
+ * A group of units which can run alongside other groups, as a background job.
+ *
+ * The units inside a group still run one after another, with their usual
+ * precondition chain, but each group runs in its own subshell. At most
+ * maxJobs groups run at once. The output and passed/failed counters of each
+ * group are written to a temporary directory, and a {@link JobWaitUnit} after
+ * the last group waits for them all and adds them back into the script's own
+ * counters.
+ */
+public class JobGroupUnit extends ComplexUnit {
+
+	private interface Emitter {
+		void emit(IUnit unit, Appendable out) throws IOException;
+	}
+
+	static final String JOB_DIR = "thornsec_jobs";
+
+	private final Collection<IUnit> units;
+	private final int maxJobs;
+
+	/**
+	 * @param name the group's name
+	 * @param units the units to run, in order
+	 * @param maxJobs the most groups to run at once
+	 */
+	public JobGroupUnit(String name, Collection<IUnit> units, int maxJobs) {
+		super(name + "_job", "proceed", "", "");
+
+		this.units = units;
+		this.maxJobs = Math.max(1, maxJobs);
+	}
+
+	@Override
+	public void emitAudit(Appendable out, boolean quiet) throws IOException {
+		emitJob(out, (unit, text) -> unit.emitAudit(text, quiet));
+	}
+
+	@Override
+	public void emitConfig(Appendable out) throws IOException {
+		emitJob(out, IUnit::emitConfig);
+	}
+
+	@Override
+	public void emitDryRun(Appendable out) throws IOException {
+		emitJob(out, IUnit::emitDryRun);
+	}
+
+	private void emitJob(Appendable out, Emitter emitter) throws IOException {
+		final String results = "\"${" + JOB_DIR + "}/" + getLabel();
+
+		out.append(JOB_DIR).append("=${").append(JOB_DIR).append(":-$(mktemp -d)}\n");
+		// Don't start another job until there's room for it
+		out.append("while [ \"$(jobs -rp | wc -l)\" -ge ").append(Integer.toString(this.maxJobs)).append(" ] ; do\n");
+		out.append("\twait -n\n");
+		out.append("done\n");
+		out.append("(\n");
+		out.append("passed=0; failed=0; fail_string=;\n");
+		out.append("{\n");
+		for (final IUnit unit : this.units) {
+			out.append("#============ ").append(unit.getLabel()).append(" =============\n");
+			emitter.emit(unit, out);
+			out.append("\n");
+		}
+		out.append("} > ").append(results).append(".log\" 2>&1\n");
+		out.append("printf 'job_passed=%d\\njob_failed=%d\\n' \"$passed\" \"$failed\" > ").append(results).append(".result\"\n");
+		out.append("printf '%s' \"$fail_string\" > ").append(results).append(".fail\"\n");
+		out.append(") &\n");
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.unit;
+
+import java.io.IOException;
+
+/**
+ * Waits for every {@link JobGroupUnit} before it to finish, then prints their
+ * output (a job at a time, so it doesn't get interleaved) and adds their
+ * passed/failed counts and failure messages into the script's own.
+ */
+public class JobWaitUnit extends ComplexUnit {
+
+	public JobWaitUnit(String name) {
+		super(name + "_jobs_finished", "proceed", "", "");
+	}
+
+	@Override
+	public void emitAudit(Appendable out, boolean quiet) throws IOException {
+		emitWait(out);
+	}
+
+	@Override
+	public void emitConfig(Appendable out) throws IOException {
+		emitWait(out);
+	}
+
+	@Override
+	public void emitDryRun(Appendable out) throws IOException {
+		emitWait(out);
+	}
+
+	private void emitWait(Appendable out) throws IOException {
+		final String dir = JobGroupUnit.JOB_DIR;
+
+		out.append("wait\n");
+		out.append("if [ -n \"${").append(dir).append("}\" ] ; then\n");
+		out.append("\tfor job in \"${").append(dir).append("}\"/*.result ; do\n");
+		out.append("\t\t[ -f \"$job\" ] || continue\n");
+		out.append("\t\tjob=\"${job%.result}\"\n");
+		out.append("\t\tcat \"${job}.log\"\n");
+		out.append("\t\tsource \"${job}.result\"\n");
+		out.append("\t\tpassed=$((passed + job_passed))\n");
+		out.append("\t\tfailed=$((failed + job_failed))\n");
+		out.append("\t\tfail_string=\"${fail_string}$(cat \"${job}.fail\")\"\n");
+		out.append("\tdone\n");
+		out.append("\trm -rf \"${").append(dir).append("}\"\n");
+		out.append("\tunset ").append(dir).append("\n");
+		out.append("fi\n");
+		out.append(getLabel()).append("_audit_passed=1\n");
+	}
+}
@@ -7,6 +7,7 @@
  */
 package org.privacyinternational.thornsec.core.unit.fs;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -25,6 +26,8 @@ public class FileUnit extends SimpleUnit {
 	private String owner;
 	private String group;
 
+	private boolean dirty;
+
 	/**
 	 * Unit for writing out a whole file, with custom fail message
 	 *
@@ -38,6 +41,7 @@ public class FileUnit extends SimpleUnit {
 		super(name, precondition, "sudo touch " + path, "sudo cat " + path + " 2>&1;", "", "pass", message);
 
 		this.lines = new ArrayList<>();
+		this.dirty = false;
 		this.path = path;
 		this.permissions = permissions;
 		this.owner = owner;
@@ -81,17 +85,56 @@ public class FileUnit extends SimpleUnit {
 		this(name, precondition, path, "Couldn't create " + path + ".  This is a pretty serious problem!");
 	}
 
+	/**
+	 * (Re)render our config & test from our lines, if they've changed since we
+	 * last did so. This is deferred until our unit is actually generated, as
+	 * rendering on every append makes building large files quadratic.
+	 */
 	private void rebuildUnit() {
-		String body = String.join("", this.lines);
+		if (!this.dirty) {
+			return;
+		}
+
+		int length = 0;
+		for (final String line : this.lines) {
+			length += line.length();
+		}
+
+		final StringBuilder body = new StringBuilder(length);
+		for (final String line : this.lines) {
+			body.append(line);
+		}
 
 		// Remove any trailing newline when echoing out...
-		while (body.endsWith("\n")) {
-			body = body.substring(0, body.length() - 1);
+		int end = body.length();
+		while (end > 0 && body.charAt(end - 1) == '\n') {
+			end--;
 		}
+		body.setLength(end);
 
 		super.config = "sudo [ -f " + this.path + " ] || sudo touch " + this.path + ";" + "echo \"${" + this.label + "_expected}\" | sudo tee " + this.path + " > /dev/null";
 
-		super.test = body;
+		super.test = body.toString();
+
+		this.dirty = false;
+	}
+
+	@Override
+	public void emitAudit(Appendable out, boolean quiet) throws IOException {
+		rebuildUnit();
+		super.emitAudit(out, quiet);
+	}
+
+	@Override
+	public void emitConfig(Appendable out) throws IOException {
+		rebuildUnit();
+		super.emitConfig(out);
+	}
+
+	@Override
+	public void emitDryRun(Appendable out) throws IOException {
+		rebuildUnit();
+		super.emitDryRun(out);
 	}
 
 	/**
@@ -125,7 +168,7 @@ public class FileUnit extends SimpleUnit {
 			line += "\n";
 		}
 		this.lines.add(line);
-		rebuildUnit();
+		this.dirty = true;
 	}
 
 	/**
@@ -161,6 +204,7 @@ public class FileUnit extends SimpleUnit {
 	
 	protected void setLines(Collection<String> lines) {
 		this.lines = lines;
+		this.dirty = true;
 	}
 
 	public void setPermissions(int permissions) {
@@ -0,0 +1,111 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.unit.vm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.privacyinternational.thornsec.core.StringUtils;
+import org.privacyinternational.thornsec.core.unit.ComplexUnit;
+
+/**
+ * A batch of VBoxManage modifyvm settings for a single VirtualBox VM.
+ *
+ * Each setting is checked against the VM's {@link VMSnapshotUnit}, and
+ * reported on individually, but any which have drifted are all put right in
+ * a single modifyvm call, rather than one VBoxManage (and one lock on the VM)
+ * per setting.
+ */
+public class VMSettingsUnit extends ComplexUnit {
+
+	private final String service;
+	private final String user;
+	private final Map<String, String> settings;
+
+	/**
+	 * @param service the VM's name
+	 * @param user the user the VM runs as
+	 * @param message what to tell the user if we're unable to change the
+	 * 			settings
+	 */
+	public VMSettingsUnit(String service, String user, String message) {
+		super(StringUtils.stringToAlphaNumeric(service, "_") + "_vm_settings",
+				VMSnapshotUnit.getLabel(service), "", "", message);
+
+		this.service = service;
+		this.user = user;
+		this.settings = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Set a given modifyvm setting, as per
+	 * https://www.virtualbox.org/manual/ch08.html#vboxmanage-modifyvm
+	 *
+	 * @param setting the setting, without its leading --
+	 * @param value what to set it to
+	 * @return this, so you can chain settings
+	 */
+	public VMSettingsUnit set(String setting, String value) {
+		this.settings.put(setting, value);
+
+		return this;
+	}
+
+	public VMSettingsUnit set(String setting, Integer value) {
+		return set(setting, value.toString());
+	}
+
+	private String getDrift() {
+		return getLabel() + "_drift";
+	}
+
+	@Override
+	protected String getAudit() {
+		final StringBuilder audit = new StringBuilder();
+
+		audit.append(getLabel()).append("_audit() {\n");
+		audit.append("\t").append(getDrift()).append("=()\n");
+		audit.append("\t").append(getDrift()).append("_names=\"\"\n");
+
+		for (Map.Entry<String, String> setting : this.settings.entrySet()) {
+			final String name = this.service + "_" + setting.getKey() + "_" + setting.getValue();
+
+			audit.append("\tif [ \"$(").append(VMSnapshotUnit.get(this.service, setting.getKey())).append(")\" = \"")
+					.append(setting.getValue()).append("\" ] ; then\n");
+			audit.append("\t\tprintf \"\\e[0;32m ✓ \\e[0m ").append(name).append("\\n\"\n");
+			audit.append("\telse\n");
+			audit.append("\t\tprintf \"\\e[0;31m ❌ \\e[0m ").append(name).append("\\n\"\n");
+			audit.append("\t\t").append(getDrift()).append("+=(--").append(setting.getKey()).append(" ")
+					.append(setting.getValue()).append(")\n");
+			audit.append("\t\t").append(getDrift()).append("_names=\"${").append(getDrift()).append("_names} ")
+					.append(setting.getKey()).append("\"\n");
+			audit.append("\tfi\n");
+		}
+
+		audit.append("\n");
+		audit.append("\tif [ ${#").append(getDrift()).append("[@]} -eq 0 ] ; then\n");
+		audit.append("\t\t").append(getLabel()).append("_audit_passed=1\n");
+		audit.append("\telse\n");
+		audit.append("\t\t").append(getLabel()).append("_audit_passed=0\n");
+		audit.append("\tfi\n");
+		audit.append("}\n");
+
+		return audit.toString();
+	}
+
+	@Override
+	protected String getConfig() {
+		return "sudo -u " + this.user + " VBoxManage modifyvm " + this.service + " \"${" + getDrift() + "[@]}\";"
+				+ VMSnapshotUnit.refresh(this.service);
+	}
+
+	@Override
+	protected String getMessage() {
+		return super.getMessage() + " (${" + getDrift() + "_names} )";
+	}
+}
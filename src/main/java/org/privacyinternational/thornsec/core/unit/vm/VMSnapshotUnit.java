@@ -0,0 +1,112 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.unit.vm;
+
+import org.privacyinternational.thornsec.core.unit.ComplexUnit;
+
+/**
+ * Takes a snapshot of a VirtualBox VM's state into a bash associative array,
+ * so we only need to ask VBoxManage about a VM once, rather than once for
+ * every setting we want to check.
+ *
+ * The array holds everything from showvminfo --machinereadable (with quotes
+ * stripped, so uart1="0x03f8,4" is stored as [uart1]=0x03f8,4), and every
+ * guest property, keyed as guestproperty:&lt;name&gt;.
+ *
+ * Units checking a setting should audit with {@link #get(String, String)},
+ * and call {@link #refresh(String)} after changing the VM.
+ */
+public class VMSnapshotUnit extends ComplexUnit {
+
+	/**
+	 * @param service the VM's name
+	 * @param user the user the VM runs as
+	 * @param precondition the unit which makes sure the VM exists
+	 */
+	public VMSnapshotUnit(String service, String user, String precondition) {
+		super(getLabel(service), precondition, "",
+				buildAudit(service, user),
+				"I was unable to read " + service + "'s settings from VirtualBox.");
+	}
+
+	private static String buildAudit(String service, String user) {
+		final String array = getArray(service);
+		final String label = getLabel(service);
+
+		final StringBuilder audit = new StringBuilder();
+		audit.append("declare -gA ").append(array).append("=()\n");
+		audit.append(label).append("_audit() {\n");
+		audit.append("\t").append(array).append("=()\n");
+		audit.append("\twhile IFS='=' read -r key value; do\n");
+		audit.append("\t\tkey=\"${key#\\\"}\"; key=\"${key%\\\"}\"\n");
+		audit.append("\t\tvalue=\"${value#\\\"}\"; value=\"${value%\\\"}\"\n");
+		audit.append("\t\t[ -n \"$key\" ] && ").append(array).append("[\"$key\"]=\"$value\"\n");
+		audit.append("\tdone < <(sudo -u ").append(user).append(" VBoxManage showvminfo ").append(service)
+				.append(" --machinereadable 2>/dev/null)\n");
+		audit.append("\tlocal re='^Name: (.*), value: (.*), timestamp:'\n");
+		audit.append("\twhile IFS= read -r line; do\n");
+		audit.append("\t\t[[ $line =~ $re ]] && ").append(array)
+				.append("[\"guestproperty:${BASH_REMATCH[1]}\"]=\"${BASH_REMATCH[2]}\"\n");
+		audit.append("\tdone < <(sudo -u ").append(user).append(" VBoxManage guestproperty enumerate ").append(service)
+				.append(" 2>/dev/null)\n");
+		audit.append("\n");
+		audit.append("\tif [ ${#").append(array).append("[@]} -gt 0 ] ; then\n");
+		audit.append("\t\t").append(label).append("_audit_passed=1\n");
+		audit.append("\telse\n");
+		audit.append("\t\t").append(label).append("_audit_passed=0\n");
+		audit.append("\tfi\n");
+		audit.append("}\n");
+
+		return audit.toString();
+	}
+
+	/**
+	 * @return the label of a given VM's snapshot unit, normalised the same way
+	 * 			as every other unit's label, so it matches what our audit defines
+	 */
+	public static String getLabel(String service) {
+		return normalise(service) + "_vm_snapshot";
+	}
+
+	/**
+	 * @return the name of the array holding a given VM's snapshot
+	 */
+	public static String getArray(String service) {
+		return "vm_" + normalise(service);
+	}
+
+	private static String normalise(String service) {
+		return service.toLowerCase().replaceAll("[^a-z0-9]", "_");
+	}
+
+	/**
+	 * @param service the VM's name
+	 * @param key the showvminfo key, e.g. uart1
+	 * @return an audit which prints the snapshotted value of key
+	 */
+	public static String get(String service, String key) {
+		return "echo \"${" + getArray(service) + "[" + key + "]}\"";
+	}
+
+	/**
+	 * @param service the VM's name
+	 * @param property the guest property, e.g. /VirtualBox/GuestAdd/VBoxService/--timesync-interval
+	 * @return an audit which prints the snapshotted value of the guest property
+	 */
+	public static String getGuestProperty(String service, String property) {
+		return get(service, "guestproperty:" + property);
+	}
+
+	/**
+	 * @param service the VM's name
+	 * @return a command to re-take a VM's snapshot, for after it's been changed
+	 */
+	public static String refresh(String service) {
+		return getLabel(service) + "_audit";
+	}
+}
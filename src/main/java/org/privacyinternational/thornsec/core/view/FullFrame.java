@@ -454,6 +454,15 @@ public class FullFrame {
 
 		serverPanel.add(serverTree);
 
+		// Whether our HyperVisors can host their services is a network-wide thing
+		final GridBagConstraints placementConstraints = new GridBagConstraints();
+		placementConstraints.gridx = 0;
+		placementConstraints.gridy = 1;
+		placementConstraints.fill = GridBagConstraints.HORIZONTAL;
+		final JButton placement = new JButton("Check Placement");
+		placement.addActionListener(new ServerListener(null, model, out, System.in));
+		serverPanel.add(placement, placementConstraints);
+
 		// GridBagConstraints g = new GridBagConstraints();
 		// g.fill = GridBagConstraints.VERTICAL;
 		// JButton buildiso = new JButton("Audit All");
@@ -2,10 +2,22 @@ package org.privacyinternational.thornsec.core.view;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import javax.json.Json;
+import javax.json.JsonWriter;
+import javax.json.stream.JsonGenerator;
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
 
+import org.privacyinternational.thornsec.core.exception.runtime.InvalidMachineModelException;
 import org.privacyinternational.thornsec.core.model.network.NetworkModel;
+import org.privacyinternational.thornsec.core.model.network.Placement;
 
 public class ServerListener implements ActionListener {
 
@@ -33,11 +45,63 @@ public class ServerListener implements ActionListener {
 			//else if (action.equals("Build ISO"))
 			//	network.genIsoServer(server, "./");
 			else if (action.equals("Audit All"))
-				network.auditAll(out, in, false);
+				auditAll();
+			else if (action.equals("Check Placement"))
+				checkPlacement();
 		}
 		catch (Exception ex) {
 			System.out.println(ex.getLocalizedMessage());
 		}
  	}
 
+	/**
+	 * Audit every server on the network. This blocks until they've all
+	 * finished (or timed out), so do it on its own thread rather than the EDT
+	 */
+	private void auditAll() {
+		final Thread audit = new Thread(() -> {
+			try {
+				network.auditAll(out, in, false);
+			}
+			catch (Exception ex) {
+				System.out.println(ex.getLocalizedMessage());
+			}
+		}, "AuditAll");
+
+		audit.setDaemon(true);
+		audit.start();
+	}
+
+	/**
+	 * Print out whether our HyperVisors can host their services, and offer to
+	 * save a copy of the JSON with any suggested moves made
+	 */
+	private void checkPlacement() throws InvalidMachineModelException, IOException {
+		final Placement placement = new Placement(network);
+
+		out.write(placement.getReport().getBytes(StandardCharsets.UTF_8));
+		out.flush();
+
+		if (placement.getMoves().isEmpty()) {
+			return;
+		}
+
+		if (JOptionPane.showConfirmDialog(null, "Save a copy of your JSON with these services moved?",
+				"Suggested placement", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+			return;
+		}
+
+		final JFileChooser chooser = new JFileChooser();
+		if (chooser.showSaveDialog(null) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+
+		try (Writer file = new FileWriter(chooser.getSelectedFile(), StandardCharsets.UTF_8);
+				JsonWriter writer = Json.createWriterFactory(Map.of(JsonGenerator.PRETTY_PRINTING, true)).createWriter(file)) {
+			writer.writeObject(Json.createObjectBuilder()
+					.add(network.getLabel(), placement.getRewrittenJSON())
+					.build());
+		}
+	}
+
 }
@@ -2,19 +2,145 @@ package org.privacyinternational.thornsec.core.view;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
 
+/**
+ * An OutputStream which writes into a JTextArea.
+ *
+ * Bytes are buffered up as they're written (from whichever thread), and then
+ * decoded as UTF-8 and appended (via invokeLater) on the EDT at most once every
+ * {@code flushInterval} ms. The text area only ever keeps the last
+ * {@code maxLines} lines, so it doesn't grow forever in long sessions.
+ */
 public class TextAreaOutputStream extends OutputStream {
 
-	private JTextArea area;
+	private static final int DEFAULT_FLUSH_INTERVAL = 100;
+	private static final int DEFAULT_MAX_LINES = 10000;
+
+	// Shared between all of our streams, this just hands drains over to the EDT
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+		final Thread thread = new Thread(runnable, "TextAreaOutputStream");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final JTextArea area;
+	private final int flushInterval;
+	private final int maxLines;
+
+	private final CharsetDecoder decoder;
+	private ByteBuffer pending;
+	private final CharBuffer decoded;
+
+	private boolean scheduled;
+	private long lastDrained;
 
 	public TextAreaOutputStream(JTextArea area) {
+		this(area, DEFAULT_FLUSH_INTERVAL, DEFAULT_MAX_LINES);
+	}
+
+	/**
+	 * @param area the text area to write into
+	 * @param flushInterval how often, in ms, to update the text area
+	 * @param maxLines the maximum number of lines to keep in the text area
+	 */
+	public TextAreaOutputStream(JTextArea area, int flushInterval, int maxLines) {
 		this.area = area;
+		this.flushInterval = flushInterval;
+		this.maxLines = maxLines;
+
+		this.decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.pending = ByteBuffer.allocate(8192);
+		this.decoded = CharBuffer.allocate(8192);
+
+		this.scheduled = false;
+		this.lastDrained = 0;
 	}
 
+	@Override
 	public void write(int b) throws IOException {
-		area.append(String.valueOf((char) b));
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		if (this.pending.remaining() < len) {
+			final ByteBuffer bigger = ByteBuffer.allocate(Math.max(this.pending.capacity() * 2, this.pending.position() + len));
+			this.pending.flip();
+			bigger.put(this.pending);
+			this.pending = bigger;
+		}
+
+		this.pending.put(b, off, len);
+
+		if (!this.scheduled) {
+			this.scheduled = true;
+
+			final long delay = Math.max(0, this.lastDrained + this.flushInterval - System.currentTimeMillis());
+			scheduler.schedule(() -> SwingUtilities.invokeLater(this::drain), delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Decode whatever we've got buffered up (leaving any partial characters
+	 * for next time)
+	 */
+	private synchronized String takePending() {
+		final StringBuilder text = new StringBuilder(this.pending.position());
+
+		this.pending.flip();
+
+		CoderResult result;
+		do {
+			result = this.decoder.decode(this.pending, this.decoded, false);
+			this.decoded.flip();
+			text.append(this.decoded);
+			this.decoded.clear();
+		} while (result.isOverflow());
+
+		this.pending.compact();
+
+		this.scheduled = false;
+		this.lastDrained = System.currentTimeMillis();
+
+		return text.toString();
+	}
+
+	/**
+	 * Append what we've got to the text area, then trim it. This runs on the EDT
+	 */
+	private void drain() {
+		final String text = takePending();
+
+		if (text.isEmpty()) {
+			return;
+		}
+
+		this.area.append(text);
+
+		final int excess = this.area.getLineCount() - this.maxLines;
+		if (excess > 0) {
+			try {
+				this.area.replaceRange(null, 0, this.area.getLineStartOffset(excess));
+			} catch (BadLocationException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+		}
 	}
 
 }
@@ -9,6 +9,7 @@ package org.privacyinternational.thornsec.profile.dhcp;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.privacyinternational.thornsec.core.data.machine.AMachineData.MachineType;
@@ -21,6 +22,7 @@ import org.privacyinternational.thornsec.core.iface.IUnit;
 import org.privacyinternational.thornsec.core.model.machine.AMachineModel;
 import org.privacyinternational.thornsec.core.model.machine.ServerModel;
 import org.privacyinternational.thornsec.core.model.machine.configuration.networking.NetworkInterfaceModel;
+import org.privacyinternational.thornsec.core.model.network.IPAddressAllocator;
 import org.privacyinternational.thornsec.core.unit.fs.DirUnit;
 import org.privacyinternational.thornsec.core.unit.fs.FileUnit;
 import org.privacyinternational.thornsec.core.unit.pkg.EnabledServiceUnit;
@@ -51,11 +53,15 @@ public class ISCDHCPServer extends ADHCPServerProfile {
 	/**
 	 * Builds a given subnet
 	 * @param type The Machine type you're building the subnet for
-	 * @throws InvalidIPAddressException if an invalid IP address is assigned
+	 * @param allocator The allocator for this subnet's addresses
+	 * @throws InvalidIPAddressException if an invalid IP address is assigned,
+	 * 		or an address is assigned to more than one interface
 	 */
-	private void buildNet(MachineType type) throws InvalidIPAddressException {
-		// First IP belongs to this net's router, so start from there (as it's assigned)
-		IPAddress ip = getNetworkModel().getSubnet(type).getLowerNonZeroHost();
+	private void buildNet(MachineType type, IPAddressAllocator allocator) throws InvalidIPAddressException {
+		if (!allocator.getConflicts().isEmpty()) {
+			throw new InvalidIPAddressException("The following addresses are assigned more than once on your "
+					+ type + " subnet: " + allocator.getConflicts());
+		}
 
 		addSubnet(type, getSubnet(type));
 		addToSubnet(type, getNetworkModel().getMachines(type));
@@ -70,32 +76,12 @@ public class ISCDHCPServer extends ADHCPServerProfile {
 			for (final NetworkInterfaceModel nic : machine.getNetworkInterfaces()) {
 				// DHCP servers distribute IP addresses, correct? :)
 				if (nic.getAddresses().isEmpty()) {
-					do {
-						ip = ip.increment(1);
-					}
-					while (isAssigned(ip));
-						
-					nic.addAddress(ip);
+					nic.addAddress(allocator.allocate());
 				}
 			}
 		}
 	}
 
-	/**
-	 * Checks whether a given IP address is already assigned somewhere on our
-	 * network.
-	 * 
-	 * @param ip the IP address to check
-	 * @return true if assigned, false otherwise 
-	 */
-	private Boolean isAssigned(IPAddress ip) {
-		return getNetworkModel().getMachines()
-						 .values()
-						 .stream()
-						 .filter(machine -> machine.getIPs().contains(ip))
-						 .count() > 0;
-	}
-	
 	/**
 	 * Check whether a given machine has a MAC address set for each of its
 	 * interfaces.
@@ -168,12 +154,14 @@ public class ISCDHCPServer extends ADHCPServerProfile {
 	 * @throws InvalidIPAddressException if attempting to assign an invalid IP
 	 */
 	private void buildPersistentNets() throws InvalidIPAddressException {
+		final Map<MachineType, IPAddressAllocator> allocators = IPAddressAllocator.fromNetwork(getNetworkModel());
+
 		for (MachineType type : getNetworkModel().getSubnets().keySet()) {
-			if (getNetworkModel().getMachines(type).isEmpty()) {
+			if (getNetworkModel().getMachineCount(type) == 0) {
 				continue;
 			}
 
-			buildNet(type);
+			buildNet(type, allocators.get(type));
 		}
 	}
 
@@ -199,7 +187,7 @@ public class ISCDHCPServer extends ADHCPServerProfile {
 		dhcpdConf.appendCarriageReturn();
 
 		for (final MachineType subnet : getNetworkModel().getSubnets().keySet()) {
-			if (getNetworkModel().getMachines(subnet).isEmpty()) {
+			if (getNetworkModel().getMachineCount(subnet) == 0) {
 				continue;
 			}
 
@@ -218,7 +206,7 @@ public class ISCDHCPServer extends ADHCPServerProfile {
 
 		dhcpdListen.appendText("INTERFACESv4=\\\"");
 		dhcpdListen.appendText(getNetworkModel().getSubnets().keySet().stream()
-				.filter((type) -> !getNetworkModel().getMachines(type).isEmpty())
+				.filter((type) -> getNetworkModel().getMachineCount(type) > 0)
 				.map(Object::toString)
 				.collect(Collectors.joining(" ")));
 		dhcpdListen.appendText("\\\"");
@@ -305,7 +293,7 @@ public class ISCDHCPServer extends ADHCPServerProfile {
 		final Collection<IUnit> units = new ArrayList<>();
 
 		for (final MachineType subnet : getNetworkModel().getSubnets().keySet()) {
-			if (getNetworkModel().getMachines(subnet).isEmpty()) {
+			if (getNetworkModel().getMachineCount(subnet) == 0) {
 				continue;
 			}
 
@@ -0,0 +1,203 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.profile.dns;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import org.privacyinternational.thornsec.core.StringUtils;
+
+/**
+ * This class turns one or more blocklists into a single, compact Unbound zone.
+ *
+ * Domains are kept in a trie keyed on their labels, backwards (so
+ * ads.example.com is stored as com -> example -> ads). That means any domain
+ * which is already covered by a blocked parent is dropped, as Unbound's
+ * local-zone blocks everything beneath it anyway, and duplicates fall out for
+ * free.
+ *
+ * It understands hosts files (0.0.0.0 ads.example.com), plain lists of
+ * domains, and the ||ads.example.com^ style used by adblock lists.
+ */
+class AdBlockCompiler {
+
+	private static final Pattern LABEL = Pattern.compile("[a-z0-9_]([a-z0-9_-]{0,61}[a-z0-9_])?");
+
+	// Things which turn up in hosts files, but which we mustn't block
+	private static final Set<String> IGNORED = Set.of("localhost", "localhost.localdomain", "local",
+			"broadcasthost", "ip6-localhost", "ip6-loopback", "ip6-localnet", "ip6-mcastprefix",
+			"ip6-allnodes", "ip6-allrouters", "ip6-allhosts", "0.0.0.0");
+
+	private static class Node {
+		private final Map<String, Node> children = new TreeMap<>();
+		private boolean blocked = false;
+	}
+
+	private final Node root;
+
+	AdBlockCompiler() {
+		this.root = new Node();
+	}
+
+	/**
+	 * Read in a blocklist
+	 *
+	 * @param list path to the blocklist
+	 * @throws IOException if the list can't be read
+	 */
+	void read(Path list) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(list, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				readLine(line);
+			}
+		}
+	}
+
+	private void readLine(String line) {
+		final int comment = line.indexOf('#');
+		if (comment >= 0) {
+			line = line.substring(0, comment);
+		}
+
+		final String[] tokens = line.trim().split("\\s+");
+
+		if (tokens.length == 1) {
+			add(tokens[0]);
+		}
+		else {
+			// It's a hosts file, so the first token is the address to send it to
+			for (int i = 1; i < tokens.length; i++) {
+				add(tokens[i]);
+			}
+		}
+	}
+
+	/**
+	 * Block a given domain, and everything beneath it
+	 *
+	 * @param domain the domain to block
+	 * @return false if it's not a valid domain, or it's already blocked
+	 */
+	boolean add(String domain) {
+		final String[] labels = normalise(domain);
+		if (labels == null) {
+			return false;
+		}
+
+		Node node = this.root;
+		for (int i = labels.length - 1; i >= 0; i--) {
+			if (node.blocked) {
+				// A parent's already blocked, which covers us
+				return false;
+			}
+
+			node = node.children.computeIfAbsent(labels[i], label -> new Node());
+		}
+
+		if (node.blocked) {
+			return false;
+		}
+
+		node.blocked = true;
+		// Anything beneath us is now redundant
+		node.children.clear();
+
+		return true;
+	}
+
+	/**
+	 * Tidy up a domain, and split it into its labels
+	 *
+	 * @return the labels, or null if it's not something we should block
+	 */
+	private static String[] normalise(String domain) {
+		domain = domain.trim().toLowerCase();
+
+		if (domain.startsWith("||")) {
+			domain = domain.substring(2);
+		}
+		if (domain.endsWith("^")) {
+			domain = domain.substring(0, domain.length() - 1);
+		}
+		if (domain.endsWith(".")) {
+			domain = domain.substring(0, domain.length() - 1);
+		}
+
+		if (domain.isEmpty() || domain.length() > 253 || IGNORED.contains(domain)) {
+			return null;
+		}
+
+		final String[] labels = domain.split("\\.", -1);
+
+		// Don't let a list block a whole TLD
+		if (labels.length < 2) {
+			return null;
+		}
+
+		for (String label : labels) {
+			if (!LABEL.matcher(label).matches()) {
+				return null;
+			}
+		}
+
+		return labels;
+	}
+
+	/**
+	 * @return the blocked domains, sorted so the output is stable between runs
+	 */
+	List<String> getDomains() {
+		final List<String> domains = new ArrayList<>();
+
+		collect(this.root, "", domains);
+
+		return domains;
+	}
+
+	private static void collect(Node node, String suffix, List<String> domains) {
+		for (Map.Entry<String, Node> child : node.children.entrySet()) {
+			final String domain = child.getKey() + (suffix.isEmpty() ? "" : "." + suffix);
+
+			if (child.getValue().blocked) {
+				domains.add(domain);
+			}
+			else {
+				collect(child.getValue(), domain, domains);
+			}
+		}
+	}
+
+	/**
+	 * @return the Unbound zone, one local-zone per line
+	 */
+	List<String> getZone() {
+		final List<String> zone = new ArrayList<>();
+
+		for (String domain : getDomains()) {
+			zone.add("local-zone: \"" + domain + ".\" always_nxdomain");
+		}
+
+		return zone;
+	}
+
+	/**
+	 * @return a SHA-256 of our zone, so we know whether it's changed
+	 */
+	String getChecksum() {
+		return StringUtils.sha256(getZone());
+	}
+}
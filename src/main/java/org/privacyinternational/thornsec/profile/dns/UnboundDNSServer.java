@@ -7,12 +7,17 @@
  */
 package org.privacyinternational.thornsec.profile.dns;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import org.privacyinternational.thornsec.core.StringUtils;
 import org.privacyinternational.thornsec.core.data.machine.configuration.TrafficRule.Encapsulation;
 import org.privacyinternational.thornsec.core.exception.data.InvalidPortException;
 import org.privacyinternational.thornsec.core.exception.runtime.ARuntimeException;
@@ -44,6 +49,12 @@ public class UnboundDNSServer extends ADNSServerProfile {
 
 	private static String UNBOUND_PIDFILE = "/var/run/unbound/unbound.pid";
 
+	private static String ADBLOCK_LOADED_MARKER = UNBOUND_CONFIG_DIR + "adblock.zone.loaded";
+	private static String INTERNAL_ZONES_LOADED_MARKER = UNBOUND_CONFIG_DIR + "internal_zones.loaded";
+
+	// How many files to split each of our internal zones between
+	private static final int ZONE_SHARDS = 16;
+
 	private final Map<HostName, Set<AMachineModel>> zones;
 
 	private FileUnit unboundConf;
@@ -115,16 +126,19 @@ public class UnboundDNSServer extends ADNSServerProfile {
 		cacheMaximumTTL((60*60)*24); // 1 day
 		prefetch("yes");
 
-		// Configure sensible values based on the number of CPUs in your machine
-		final Integer cpus = getServerModel().getCPUs();
-		numThreads(cpus/2);
-		msgCacheSlabs(16);
-		rrsetCacheSlabs(16);
-		infraCacheSlabs(16);
-		keyCacheSlabs(16);
-		rrsetCacheSize(100);
-		msgCacheSize(50);
-		soRCVBuffer(0);
+		// Configure sensible values based on the Router's resources & clients
+		final UnboundTuning tuning = new UnboundTuning(getServerModel(), getNetworkModel());
+		numThreads(tuning.getThreads());
+		msgCacheSlabs(tuning.getSlabs());
+		rrsetCacheSlabs(tuning.getSlabs());
+		infraCacheSlabs(tuning.getSlabs());
+		keyCacheSlabs(tuning.getSlabs());
+		rrsetCacheSize(tuning.getRRSetCacheSize());
+		msgCacheSize(tuning.getMsgCacheSize());
+		outgoingRange(tuning.getOutgoingRange());
+		numQueriesPerThread(tuning.getQueriesPerThread());
+		soRCVBuffer(tuning.getSoRcvbuf());
+		soReusePort(tuning.getSoReuseport() ? "yes" : "no");
 
 		adBlocking(getNetworkModel().doAdBlocking());
 		rootHints(UNBOUND_CONFIG_DIR + "root.hints");
@@ -261,7 +275,9 @@ public class UnboundDNSServer extends ADNSServerProfile {
 	private void setInternalZones() {
 		for (final HostName zone : this.zones.keySet()) {
 			unboundConf.appendLine("\tprivate-domain: \\\"" + zone.getHost() + "\\\"");
-			unboundConf.appendLine("\tinclude: \\\"" + UNBOUND_CONFIG_DROPIN_DIR + zone.getHost() + ".zone\\\"");
+			// Typetransparent passes resolution upwards if not found locally
+			unboundConf.appendLine("\tlocal-zone: \\\"" + zone.getHost() + ".\\\" typetransparent");
+			unboundConf.appendLine("\tinclude: \\\"" + getZoneDir(zone) + "*.zone\\\"");
 		}
 	}
 
@@ -287,32 +303,63 @@ public class UnboundDNSServer extends ADNSServerProfile {
 	 * If not 0, then set the SO_RCVBUF socket option to get more buffer space
 	 * on UDP port incoming queries so that short spikes on busy servers do
 	 * not drop packets (see counter in netstat -su). 
-	 * @param size 0 (use system value). Otherwise, the number of bytes to ask
-	 * 				for. The OS caps it at a maximum, on linux unbound needs
-	 * 				root permission to bypass the limit, or the admin can set
-	 * 				sysctl net.core.rmem_max.
+	 * @param megabytes 0 (use system value). Otherwise, the number of
+	 * 				megabytes to ask for. The OS caps it at a maximum, on linux
+	 * 				unbound needs root permission to bypass the limit, or the
+	 * 				admin can set sysctl net.core.rmem_max.
 	 * @throws InvalidProfileException if size is invalid
 	 */
-	private void soRCVBuffer(int size) throws InvalidProfileException {
-		addSettingToConfig("so-rcvbuf", size);
+	private void soRCVBuffer(int megabytes) throws InvalidProfileException {
+		addSizeToConfig("so-rcvbuf", megabytes);
+	}
+
+	/**
+	 * Open a dedicated listening socket for incoming queries for each thread,
+	 * so the kernel can spread them out rather than all threads fighting over
+	 * a single socket.
+	 * @param value "yes" or "no"
+	 * @throws InvalidProfileException if value is invalid
+	 */
+	private void soReusePort(String value) throws InvalidProfileException {
+		addSettingToConfig("so-reuseport", value);
 	}
 
 	/**
-	 * Number of bytes size of the message cache
+	 * Number of ports to open per thread for outgoing queries. More ports
+	 * means more queries can be in flight to upstream at once.
+	 * @param ports number of ports
+	 * @throws InvalidProfileException if ports is invalid
+	 */
+	private void outgoingRange(int ports) throws InvalidProfileException {
+		addSettingToConfig("outgoing-range", ports);
+	}
+
+	/**
+	 * Number of queries each thread will service at once. If there are more,
+	 * the older ones are dropped.
+	 * @param queries number of queries
+	 * @throws InvalidProfileException if queries is invalid
+	 */
+	private void numQueriesPerThread(int queries) throws InvalidProfileException {
+		addSettingToConfig("num-queries-per-thread", queries);
+	}
+
+	/**
+	 * Size of the message cache
 	 * @param megabytes size in megabytes
 	 * @throws InvalidProfileException if size is invalid
 	 */
 	private void msgCacheSize(int megabytes) throws InvalidProfileException {
-		addSettingToConfig("msg-cache-size", megabytes * 1024);
+		addSizeToConfig("msg-cache-size", megabytes);
 	}
 
 	/**
-	 * Number of megabytes size of the RRset cache
-	 * @param megasize size in megabytes
+	 * Size of the RRset cache
+	 * @param megabytes size in megabytes
 	 * @throws InvalidProfileException if size is invalid
 	 */
 	private void rrsetCacheSize(int megabytes) throws InvalidProfileException {
-		addSettingToConfig("rrset-cache-size", megabytes * 1024);
+		addSizeToConfig("rrset-cache-size", megabytes);
 	}
 
 	/**
@@ -535,6 +582,20 @@ public class UnboundDNSServer extends ADNSServerProfile {
 		unboundConf.appendLine("\t" + setting + ": " + value);
 	}
 
+	/**
+	 * Add a memory size setting to unbound's conf
+	 * @param setting The name of the setting, as per man(5)
+	 * @param megabytes >=0
+	 * @throws InvalidProfileException if value is invalid 
+	 */
+	private void addSizeToConfig(String setting, Integer megabytes) throws InvalidProfileException {
+		if (megabytes == null || megabytes < 0) {
+			throw new InvalidProfileException("value may only be >=0");
+		}
+		// 0 means "use the default" here, which doesn't take a suffix
+		unboundConf.appendLine("\t" + setting + ": " + megabytes + ((megabytes > 0) ? "m" : ""));
+	}
+
 	/**
 	 * Trust glue only if it is within the servers authority
 	 * @param value "on" or "off"
@@ -776,6 +837,55 @@ public class UnboundDNSServer extends ADNSServerProfile {
 		return units;
 	}
 
+	/**
+	 * Builds our ad-blocking zone. If we've been given local blocklists, we
+	 * compile them into a single zone here, otherwise we fall back to having
+	 * the router download a hosts file itself.
+	 * @return units to build & load the adblock zone
+	 * @throws InvalidProfileException if a blocklist can't be read
+	 */
+	private Collection<IUnit> getAdBlockUnits() throws InvalidProfileException {
+		final Collection<IUnit> units = new ArrayList<>();
+
+		if (getNetworkModel().getAdBlockLists().isEmpty()) {
+			units.add(getAdBlockFileUnit());
+			return units;
+		}
+
+		final AdBlockCompiler compiler = new AdBlockCompiler();
+		for (Path list : getNetworkModel().getAdBlockLists()) {
+			try {
+				compiler.read(list);
+			} catch (IOException e) {
+				throw new InvalidProfileException("Unable to read the blocklist at " + list
+						+ ": " + e.getMessage());
+			}
+		}
+
+		final String checksum = compiler.getChecksum();
+
+		final FileUnit adblockZone = new FileUnit("adblock_zone", "unbound_conf_d_created",
+				UNBOUND_CONFIG_DROPIN_DIR + "adblock.zone",
+				"root", "root", 0644,
+				"I was unable to write your ad-blocking zone. Unbound will fail to start.");
+		units.add(adblockZone);
+
+		adblockZone.appendLine("# checksum: " + checksum);
+		for (String line : compiler.getZone()) {
+			adblockZone.appendLine(line.replace("\"", "\\\""));
+		}
+
+		// Only reload Unbound if the zone we've loaded isn't the one we've built
+		units.add(new SimpleUnit("adblock_zone_loaded", "adblock_zone",
+				"sudo unbound-checkconf > /dev/null"
+						+ " && sudo systemctl reload-or-restart unbound"
+						+ " && echo " + checksum + " | sudo tee " + ADBLOCK_LOADED_MARKER + " > /dev/null",
+				"cat " + ADBLOCK_LOADED_MARKER + " 2>/dev/null", checksum, "pass",
+				"I was unable to reload Unbound with your new ad-blocking zone."));
+
+		return units;
+	}
+
 	/**
 	 * Downloads our hosts file, and translates it into an Unbound zone
 	 * @return a unit to download & update the adblock zone
@@ -800,7 +910,7 @@ public class UnboundDNSServer extends ADNSServerProfile {
 
 		// Start by updating the ad block list (if req'd)
 		if (getNetworkModel().doAdBlocking()) {
-			units.add(getAdBlockFileUnit());
+			units.addAll(getAdBlockUnits());
 		}
 
 		// Now make sure all of the various zones are there & up to date
@@ -811,22 +921,91 @@ public class UnboundDNSServer extends ADNSServerProfile {
 		return units;
 	}
 	
+	/**
+	 * Builds our internal zones' records.
+	 *
+	 * Each zone is split into ZONE_SHARDS files, with machines spread between
+	 * them by a hash of their label, and sorted within them. That way, a
+	 * machine changing only touches its own shard, and each shard is audited
+	 * against a hash of its contents rather than the whole file. If any shard
+	 * changes, Unbound is reloaded (rather than restarted) to pick it up.
+	 *
+	 * @return units to build & load our internal zones
+	 */
 	private Collection<IUnit> buildDropinZones() {
 		final Collection<IUnit> units = new ArrayList<>();
+		final Collection<String> checksums = new ArrayList<>();
 
-		this.zones.forEach((zone, machines) -> {
-			final FileUnit zoneFile = new FileUnit(zone.getHost() + "_dns_internal_zone",
-					"dns_installed",
-					"/etc/unbound/unbound.conf.d/" + zone.getHost() + ".zone");
-			units.add(zoneFile);
-			// Typetransparent passes resolution upwards if not found locally
-			zoneFile.appendLine("\tlocal-zone: \\\"" + zone.getHost() + ".\\\" typetransparent");
-			zoneFile.appendLine(createRecords(machines));
-		});
+		final List<HostName> zones = new ArrayList<>(this.zones.keySet());
+		zones.sort(Comparator.comparing(HostName::getHost));
+
+		for (final HostName zone : zones) {
+			final String zoneLabel = StringUtils.stringToAlphaNumeric(zone.getHost(), "_");
+
+			units.add(new DirUnit(zoneLabel + "_dns_internal_zone", "unbound_conf_d_created",
+					getZoneDir(zone), "root", "root", 0755, ""));
+
+			final List<List<AMachineModel>> shards = new ArrayList<>();
+			for (int i = 0; i < ZONE_SHARDS; i++) {
+				shards.add(new ArrayList<>());
+			}
+			for (final AMachineModel machine : this.zones.get(zone)) {
+				shards.get(Math.floorMod(machine.getLabel().hashCode(), ZONE_SHARDS)).add(machine);
+			}
+
+			for (int i = 0; i < ZONE_SHARDS; i++) {
+				final List<AMachineModel> machines = shards.get(i);
+				machines.sort(Comparator.comparing(AMachineModel::getLabel));
+
+				final List<String> records = new ArrayList<>(createRecords(machines));
+				final String checksum = StringUtils.sha256(records);
+				checksums.add(checksum);
+
+				units.add(getZoneShardUnit(zoneLabel + "_dns_internal_zone_shard_" + i,
+						zoneLabel + "_dns_internal_zone_created",
+						getZoneDir(zone) + String.format("shard_%02d.zone", i),
+						records, checksum));
+			}
+		}
+
+		// Only reload Unbound if what it's loaded isn't what we've just built
+		final String checksum = StringUtils.sha256(checksums);
+		units.add(new SimpleUnit("dns_internal_zones_loaded", "dns_installed",
+				"sudo unbound-checkconf > /dev/null"
+						+ " && sudo systemctl reload-or-restart unbound"
+						+ " && echo " + checksum + " | sudo tee " + INTERNAL_ZONES_LOADED_MARKER + " > /dev/null",
+				"cat " + INTERNAL_ZONES_LOADED_MARKER + " 2>/dev/null", checksum, "pass",
+				"I was unable to reload Unbound with your internal DNS records."));
 
 		return units;
 	}
 
+	/**
+	 * A single shard of a zone. Its first line is a hash of its records, and
+	 * that's all we check when auditing, so unchanged shards are left alone.
+	 */
+	private IUnit getZoneShardUnit(String name, String precondition, String path,
+			Collection<String> records, String checksum) {
+		final String header = "# sha256: " + checksum;
+
+		final StringBuilder content = new StringBuilder(header);
+		for (final String record : records) {
+			content.append("\n").append(record);
+		}
+
+		return new SimpleUnit(name, precondition,
+				"echo \"" + content + "\" | sudo tee " + path + " > /dev/null",
+				"sudo head -n1 " + path + " 2>/dev/null", header, "pass",
+				"I was unable to write " + path + ". Some of your internal DNS records will be missing.");
+	}
+
+	/**
+	 * @return the directory holding a given zone's shards
+	 */
+	private String getZoneDir(HostName zone) {
+		return UNBOUND_CONFIG_DROPIN_DIR + zone.getHost() + "/";
+	}
+
 	/**
 	 * Creates the DNS records for given machines
 	 * @param machines machines to build DNS for
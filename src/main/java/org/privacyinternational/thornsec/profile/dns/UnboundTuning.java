@@ -0,0 +1,140 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.profile.dns;
+
+import org.privacyinternational.thornsec.core.data.machine.AMachineData.MachineType;
+import org.privacyinternational.thornsec.core.data.machine.configuration.DNSTuningData;
+import org.privacyinternational.thornsec.core.model.machine.ServerModel;
+import org.privacyinternational.thornsec.core.model.network.NetworkModel;
+
+/**
+ * This class works out how big Unbound's caches should be, and how many
+ * threads/sockets it should use, from the resources on the Router and the
+ * number of clients sat behind it.
+ *
+ * Based on https://nlnetlabs.nl/documentation/unbound/howto-optimise/
+ *
+ * Anything set in the Router's "dns_tuning" object wins over what we'd
+ * otherwise work out here.
+ */
+class UnboundTuning {
+
+	// Don't let the caches take more than 1/8 of the Router's RAM between them
+	private static final int MAX_CACHE_RAM_FRACTION = 8;
+	private static final int MIN_MSG_CACHE_MB = 4;
+	private static final int BASE_MSG_CACHE_MB = 8;
+	// Roughly how much message cache a busy client will fill
+	private static final int MSG_CACHE_PER_CLIENT_KB = 512;
+
+	private static final int MIN_OUTGOING_RANGE = 1024;
+	private static final int MAX_OUTGOING_RANGE = 8192;
+	private static final int OUTGOING_RANGE_PER_CLIENT = 64;
+
+	private final int threads;
+	private final int slabs;
+	private final int msgCacheSize;
+	private final int rrsetCacheSize;
+	private final int outgoingRange;
+	private final int soRcvbuf;
+	private final boolean soReuseport;
+
+	UnboundTuning(ServerModel router, NetworkModel network) {
+		final DNSTuningData overrides = router.getData().getDNSTuning()
+				.orElse(new DNSTuningData(router.getLabel()));
+
+		final int clients = network.getMachineCount(MachineType.USER)
+				+ network.getMachineCount(MachineType.GUEST);
+
+		// Leave the other half of the CPUs for routing & the firewall
+		this.threads = overrides.getThreads()
+				.orElse(Math.max(1, router.getCPUs() / 2));
+
+		this.slabs = overrides.getSlabs()
+				.orElse(nextPowerOfTwo(this.threads));
+
+		// The RRset cache wants to be about twice the size of the message cache
+		final int maxMsgCache = Math.max(MIN_MSG_CACHE_MB,
+				router.getRAM() / MAX_CACHE_RAM_FRACTION / 3);
+		final int wantedMsgCache = BASE_MSG_CACHE_MB
+				+ (clients * MSG_CACHE_PER_CLIENT_KB) / 1024;
+
+		this.msgCacheSize = overrides.getMsgCacheSize()
+				.orElse(Math.min(wantedMsgCache, maxMsgCache));
+		this.rrsetCacheSize = overrides.getRRSetCacheSize()
+				.orElse(this.msgCacheSize * 2);
+
+		// Outgoing ports are per-thread, so share the clients between them
+		final int wantedRange = MIN_OUTGOING_RANGE
+				+ (clients * OUTGOING_RANGE_PER_CLIENT) / this.threads;
+
+		this.outgoingRange = overrides.getOutgoingRange()
+				.orElse(Math.min(wantedRange, MAX_OUTGOING_RANGE));
+
+		this.soRcvbuf = overrides.getSoRcvbuf().orElse(0);
+
+		// Only worth it if there's more than one thread to spread queries over
+		this.soReuseport = overrides.getSoReuseport()
+				.orElse(this.threads > 1);
+	}
+
+	/**
+	 * @return the smallest power of two which is >= x
+	 */
+	static int nextPowerOfTwo(int x) {
+		if (x <= 1) {
+			return 1;
+		}
+
+		return Integer.highestOneBit(x - 1) << 1;
+	}
+
+	int getThreads() {
+		return this.threads;
+	}
+
+	int getSlabs() {
+		return this.slabs;
+	}
+
+	/**
+	 * @return the message cache size in megabytes
+	 */
+	int getMsgCacheSize() {
+		return this.msgCacheSize;
+	}
+
+	/**
+	 * @return the RRset cache size in megabytes
+	 */
+	int getRRSetCacheSize() {
+		return this.rrsetCacheSize;
+	}
+
+	int getOutgoingRange() {
+		return this.outgoingRange;
+	}
+
+	/**
+	 * Unbound recommends serving half as many queries per thread as it has
+	 * outgoing ports, so it doesn't run out of sockets under load
+	 */
+	int getQueriesPerThread() {
+		return Math.max(1, this.outgoingRange / 2);
+	}
+
+	/**
+	 * @return the receive buffer size in megabytes, or 0 for the OS default
+	 */
+	int getSoRcvbuf() {
+		return this.soRcvbuf;
+	}
+
+	boolean getSoReuseport() {
+		return this.soReuseport;
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.profile.firewall;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.privacyinternational.thornsec.core.data.machine.configuration.TrafficRule;
+import org.privacyinternational.thornsec.core.data.machine.configuration.TrafficRule.Table;
+import org.privacyinternational.thornsec.core.exception.data.InvalidPortException;
+import inet.ipaddr.HostName;
+import inet.ipaddr.IPAddress;
+
+/**
+ * This class tidies up a set of TrafficRules before they're turned into a
+ * firewall, so the firewall ends up with fewer (but wider) rules to check
+ * every packet against.
+ *
+ * It:
+ * <ul>
+ * <li>canonicalises each rule (destinations lose any port, as that's already
+ * 		in the rule's ports), then drops any duplicates</li>
+ * <li>merges rules which only differ in their ports</li>
+ * <li>merges Egress rules to IP addresses which only differ in their
+ * 		destinations, collapsing adjacent addresses into CIDR blocks</li>
+ * </ul>
+ *
+ * Rules to machine labels are never merged by destination, as the firewall
+ * needs to resolve each of those to its own zone.
+ *
+ * The rules you pass in are left untouched, and the order in which rules
+ * first appear is kept.
+ */
+public final class TrafficRuleNormaliser {
+
+	// iptables' multiport match can only take 15 ports per rule
+	private static final int MAX_PORTS = 15;
+
+	private TrafficRuleNormaliser() {
+	}
+
+	/**
+	 * Normalise a given set of rules
+	 *
+	 * @param rules the rules to normalise
+	 * @return the normalised rules
+	 */
+	public static Collection<TrafficRule> normalise(Collection<TrafficRule> rules) {
+		final Set<TrafficRule> canonical = new LinkedHashSet<>();
+
+		for (TrafficRule rule : rules) {
+			canonical.add(canonicalise(rule));
+		}
+
+		final Collection<TrafficRule> normalised = new ArrayList<>();
+		for (TrafficRule rule : mergeDestinations(mergePorts(canonical))) {
+			normalised.addAll(splitPorts(rule));
+		}
+
+		return normalised;
+	}
+
+	/**
+	 * Merge rules which are the same other than their ports. Rules without any
+	 * ports are left alone.
+	 */
+	private static Collection<TrafficRule> mergePorts(Collection<TrafficRule> rules) {
+		final Map<List<Object>, TrafficRule> merged = new LinkedHashMap<>();
+
+		for (TrafficRule rule : rules) {
+			final List<Object> key = rule.getPorts().isEmpty()
+					? Arrays.asList(rule)
+					: Arrays.asList(rule.getEncapsulation(), rule.getTable(), rule.getSource(), rule.getDestinations());
+
+			final TrafficRule existing = merged.get(key);
+			if (existing == null) {
+				merged.put(key, rule);
+			}
+			else {
+				existing.getPorts().addAll(rule.getPorts());
+			}
+		}
+
+		return merged.values();
+	}
+
+	/**
+	 * Merge Egress rules to IP addresses which are the same other than their
+	 * destinations, aggregating those destinations into as few CIDR blocks as
+	 * possible.
+	 */
+	private static Collection<TrafficRule> mergeDestinations(Collection<TrafficRule> rules) {
+		final Map<List<Object>, TrafficRule> merged = new LinkedHashMap<>();
+
+		for (TrafficRule rule : rules) {
+			final List<Object> key = isAddressEgress(rule)
+					? Arrays.asList(rule.getEncapsulation(), rule.getTable(), rule.getSource(), rule.getPorts())
+					: Arrays.asList(rule);
+
+			final TrafficRule existing = merged.get(key);
+			if (existing == null) {
+				merged.put(key, rule);
+			}
+			else {
+				existing.addDestinations(rule.getDestinations());
+			}
+		}
+
+		for (TrafficRule rule : merged.values()) {
+			if (isAddressEgress(rule) && rule.getDestinations().size() > 1) {
+				final Set<HostName> aggregated = aggregate(rule.getDestinations());
+
+				rule.getDestinations().clear();
+				rule.addDestinations(aggregated);
+			}
+		}
+
+		return merged.values();
+	}
+
+	/**
+	 * Collapse a set of addresses into CIDR blocks. IPv4 and IPv6 are done
+	 * separately, as they can't be merged with each other.
+	 */
+	private static Set<HostName> aggregate(Collection<HostName> destinations) {
+		final List<IPAddress> ipv4 = new ArrayList<>();
+		final List<IPAddress> ipv6 = new ArrayList<>();
+
+		for (HostName destination : destinations) {
+			final IPAddress address = destination.asAddress();
+
+			if (address.isIPv4()) {
+				ipv4.add(address);
+			}
+			else {
+				ipv6.add(address);
+			}
+		}
+
+		final Set<HostName> aggregated = new LinkedHashSet<>();
+		for (List<IPAddress> addresses : Arrays.asList(ipv4, ipv6)) {
+			if (addresses.isEmpty()) {
+				continue;
+			}
+
+			final IPAddress first = addresses.get(0);
+			final IPAddress[] rest = addresses.subList(1, addresses.size()).toArray(IPAddress[]::new);
+
+			for (IPAddress block : first.mergeToPrefixBlocks(rest)) {
+				// Single addresses go back to how they'd have been written
+				aggregated.add(block.isMultiple()
+						? new HostName(block)
+						: new HostName(block.withoutPrefixLength().toCompressedString()));
+			}
+		}
+
+		return aggregated;
+	}
+
+	/**
+	 * Split a rule up so that no single rule has more than MAX_PORTS ports
+	 */
+	private static Collection<TrafficRule> splitPorts(TrafficRule rule) {
+		final Collection<TrafficRule> split = new ArrayList<>();
+
+		if (rule.getPorts().size() <= MAX_PORTS) {
+			split.add(rule);
+			return split;
+		}
+
+		final Iterator<Integer> ports = rule.getPorts().iterator();
+		while (ports.hasNext()) {
+			final Set<Integer> chunk = new LinkedHashSet<>();
+			while (ports.hasNext() && chunk.size() < MAX_PORTS) {
+				chunk.add(ports.next());
+			}
+
+			split.add(copy(rule, rule.getDestinations(), chunk));
+		}
+
+		return split;
+	}
+
+	private static boolean isAddressEgress(TrafficRule rule) {
+		return Table.EGRESS.equals(rule.getTable())
+				&& !rule.getDestinations().isEmpty()
+				&& rule.getDestinations().stream().allMatch(HostName::isAddress);
+	}
+
+	/**
+	 * Take a copy of a rule, with its destinations' ports stripped off (they
+	 * should already be in the rule's ports) and addresses normalised.
+	 */
+	private static TrafficRule canonicalise(TrafficRule rule) {
+		final Set<HostName> destinations = new LinkedHashSet<>();
+
+		for (HostName destination : rule.getDestinations()) {
+			if (destination.isAddress() && !destination.asAddress().isMultiple()) {
+				destinations.add(new HostName(destination.asAddress().withoutPrefixLength().toCompressedString()));
+			}
+			else if (destination.getPort() != null) {
+				destinations.add(new HostName(destination.getHost()));
+			}
+			else {
+				destinations.add(destination);
+			}
+		}
+
+		return copy(rule, destinations, rule.getPorts());
+	}
+
+	private static TrafficRule copy(TrafficRule rule, Set<HostName> destinations, Set<Integer> ports) {
+		try {
+			return new TrafficRule(rule.getEncapsulation(), rule.getTable(), rule.getSource(),
+					destinations, ports);
+		} catch (InvalidPortException e) {
+			// The ports have already been checked when they went into the rule
+			throw new IllegalStateException(e);
+		}
+	}
+}
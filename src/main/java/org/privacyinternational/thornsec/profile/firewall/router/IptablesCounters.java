@@ -0,0 +1,132 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.profile.firewall.router;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class reads the packet counters out of an iptables-save -c dump, so we
+ * know how often traffic to a given destination/protocol/port actually hits
+ * the firewall.
+ *
+ * Only rules with a destination address are counted, as that's what we can
+ * match back to our own rules.
+ */
+class IptablesCounters {
+
+	private final Map<String, Long> packets;
+
+	IptablesCounters() {
+		this.packets = new HashMap<>();
+	}
+
+	/**
+	 * Read in an iptables-save -c dump
+	 *
+	 * @param dump path to the dump
+	 * @return the counters
+	 * @throws IOException if the dump can't be read
+	 */
+	static IptablesCounters read(Path dump) throws IOException {
+		final IptablesCounters counters = new IptablesCounters();
+
+		try (BufferedReader reader = Files.newBufferedReader(dump, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				counters.readLine(line.trim());
+			}
+		}
+
+		return counters;
+	}
+
+	/**
+	 * Read a single line of the form
+	 * [packets:bytes] -A chain -d 10.0.0.1/32 -p tcp -m tcp --dport 443 -j ACCEPT
+	 */
+	private void readLine(String line) {
+		if (!line.startsWith("[")) {
+			return;
+		}
+
+		final int end = line.indexOf(':');
+		if (end < 0) {
+			return;
+		}
+
+		final long count;
+		try {
+			count = Long.parseLong(line.substring(1, end));
+		} catch (NumberFormatException e) {
+			return;
+		}
+
+		String address = null;
+		String proto = null;
+		final Collection<String> ports = new ArrayList<>();
+
+		final String[] tokens = line.split("\\s+");
+		for (int i = 1; i < tokens.length - 1; i++) {
+			switch (tokens[i]) {
+				case "-d":
+					address = tokens[i + 1].replaceAll("/32$", "");
+					break;
+				case "-p":
+					proto = tokens[i + 1].toLowerCase();
+					break;
+				case "--dport":
+				case "--dports":
+					for (String port : tokens[i + 1].split(",")) {
+						ports.add(port);
+					}
+					break;
+				default:
+					break;
+			}
+		}
+
+		if (address == null) {
+			return;
+		}
+
+		if (ports.isEmpty()) {
+			add(address, proto, null, count);
+		}
+		else {
+			for (String port : ports) {
+				add(address, proto, port, count);
+			}
+		}
+	}
+
+	private void add(String address, String proto, String port, long count) {
+		this.packets.merge(getKey(address, proto, port), count, Long::sum);
+	}
+
+	/**
+	 * @param address the destination address
+	 * @param proto the protocol, or null for any
+	 * @param port the destination port, or null for any
+	 * @return how many packets we've seen matching a rule for this destination
+	 */
+	long get(String address, String proto, String port) {
+		return this.packets.getOrDefault(getKey(address, proto, port), 0L);
+	}
+
+	private static String getKey(String address, String proto, String port) {
+		return address + "|" + proto + "|" + port;
+	}
+}
@@ -0,0 +1,727 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.profile.firewall.router;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.privacyinternational.thornsec.core.StringUtils;
+import org.privacyinternational.thornsec.core.data.machine.AMachineData.MachineType;
+import org.privacyinternational.thornsec.core.data.machine.configuration.NetworkInterfaceData.Direction;
+import org.privacyinternational.thornsec.core.data.machine.configuration.TrafficRule;
+import org.privacyinternational.thornsec.core.data.machine.configuration.TrafficRule.Encapsulation;
+import org.privacyinternational.thornsec.core.exception.AThornSecException;
+import org.privacyinternational.thornsec.core.exception.runtime.ARuntimeException;
+import org.privacyinternational.thornsec.core.exception.runtime.InvalidFirewallRuleException;
+import org.privacyinternational.thornsec.core.exception.runtime.InvalidMachineModelException;
+import org.privacyinternational.thornsec.core.iface.IUnit;
+import org.privacyinternational.thornsec.core.model.machine.AMachineModel;
+import org.privacyinternational.thornsec.core.model.machine.ServerModel;
+import org.privacyinternational.thornsec.core.model.machine.configuration.networking.MACVLANTrunkModel;
+import org.privacyinternational.thornsec.core.unit.SimpleUnit;
+import org.privacyinternational.thornsec.core.unit.fs.CrontabUnit;
+import org.privacyinternational.thornsec.core.unit.fs.FileUnit;
+import org.privacyinternational.thornsec.core.unit.pkg.EnabledServiceUnit;
+import org.privacyinternational.thornsec.core.unit.pkg.InstalledUnit;
+import inet.ipaddr.HostName;
+import inet.ipaddr.IPAddress;
+import org.privacyinternational.thornsec.profile.firewall.AFirewallProfile;
+import org.privacyinternational.thornsec.profile.firewall.TrafficRuleNormaliser;
+
+/**
+ * This is an nftables firewall, built from the same TrafficRules as our
+ * ShorewallFirewall.
+ *
+ * Rather than a long chain of rules, each checked in turn, our rules are
+ * compiled into a handful of verdict maps (and a DNAT map), keyed on
+ * address/protocol/port, so each packet is a hash lookup or two.
+ *
+ * For more information on nftables, please see
+ * https://wiki.nftables.org/
+ *
+ * This only deals with IPv4, as does the rest of our network. Hostnames in
+ * Egress rules each get their own named set, which is kept up to date by a
+ * resolver script run from cron, rather than being resolved once when the
+ * ruleset is loaded.
+ *
+ * As with Shorewall's maclist, traffic from one of our machines' addresses
+ * which doesn't come from that machine's MAC address is dropped.
+ *
+ * Unlike Shorewall, traffic originating from the router itself is not
+ * filtered.
+ */
+public class NftablesFirewall extends AFirewallProfile {
+
+	private static String CONFIG_FILE = "/etc/nftables.conf";
+	private static String LOADED_FILE = "/run/thornsec-nftables.loaded";
+	private static String EGRESS_SCRIPT = "/usr/local/sbin/thornsec-nftables-egress";
+	private static String TABLE = "thornsec";
+
+	/**
+	 * A named nftables map (or set, if it has no values)
+	 */
+	private static class NftMap {
+		private final String name;
+		private final String keyType;
+		private final String valueType;
+		private final Boolean interval;
+		private final Boolean dynamic;
+		private final Map<String, String> elements;
+
+		NftMap(String name, String keyType, String valueType, Boolean interval) {
+			this(name, keyType, valueType, interval, false);
+		}
+
+		/**
+		 * @param dynamic whether this map's elements are filled in once the
+		 * 			ruleset is loaded, in which case it's defined even if empty
+		 */
+		NftMap(String name, String keyType, String valueType, Boolean interval, Boolean dynamic) {
+			this.name = name;
+			this.keyType = keyType;
+			this.valueType = valueType;
+			this.interval = interval;
+			this.dynamic = dynamic;
+			this.elements = new LinkedHashMap<>();
+		}
+
+		/**
+		 * Add an element. If the key's already there, the first value wins, as
+		 * it would have with a chain of rules.
+		 */
+		void put(String key, String value) {
+			this.elements.putIfAbsent(key, value);
+		}
+
+		Boolean isEmpty() {
+			return this.elements.isEmpty();
+		}
+
+		String getName() {
+			return this.name;
+		}
+
+		void appendDefinition(StringBuilder nft) {
+			if (isEmpty() && !this.dynamic) {
+				return;
+			}
+
+			nft.append("\t").append((this.valueType == null) ? "set " : "map ").append(this.name).append(" {\n");
+			nft.append("\t\ttype ").append(this.keyType);
+			if (this.valueType != null) {
+				nft.append(" : ").append(this.valueType);
+			}
+			nft.append("\n");
+			if (this.interval) {
+				nft.append("\t\tflags interval\n");
+			}
+
+			if (isEmpty()) {
+				nft.append("\t}\n\n");
+				return;
+			}
+
+			nft.append("\t\telements = {\n");
+
+			boolean first = true;
+			for (Map.Entry<String, String> element : this.elements.entrySet()) {
+				if (!first) {
+					nft.append(",\n");
+				}
+				nft.append("\t\t\t").append(element.getKey());
+				if (element.getValue() != null) {
+					nft.append(" : ").append(element.getValue());
+				}
+				first = false;
+			}
+
+			nft.append("\n\t\t}\n");
+			nft.append("\t}\n\n");
+		}
+	}
+
+	/**
+	 * Compiles a set of TrafficRules into our maps.
+	 *
+	 * Machine labels are only resolved to their addresses once per ruleset.
+	 */
+	private class RuleSetBuilder {
+		// Traffic from The Internet, keyed on where it's going
+		private final NftMap ingressHosts;
+		private final NftMap ingressProtos;
+		private final NftMap ingressPorts;
+
+		// Everything else, keyed on where it's from & where it's going
+		private final NftMap ruleHosts;
+		private final NftMap ruleProtos;
+		private final NftMap rulePorts;
+
+		private final NftMap dnatHosts;
+		private final NftMap dnatPorts;
+		private final NftMap dnatTargets;
+
+		private final NftMap wanIfaces;
+
+		// Our maclist: the addresses we know the MAC of, and their pairs
+		private final NftMap macAddresses;
+		private final NftMap macPairs;
+
+		// Egress hostnames, keyed on hostname, and the rules which use them
+		private final Map<String, NftMap> egressNames;
+		private final Collection<String> egressRules;
+
+		private final Map<String, AMachineModel> machines;
+		private final Collection<String> lanSubnets;
+
+		RuleSetBuilder() {
+			this.ingressHosts = new NftMap("ingress_hosts", "ipv4_addr", "verdict", false);
+			this.ingressProtos = new NftMap("ingress_protos", "ipv4_addr . inet_proto", "verdict", false);
+			this.ingressPorts = new NftMap("ingress_ports", "ipv4_addr . inet_proto . inet_service", "verdict", false);
+
+			this.ruleHosts = new NftMap("rule_hosts", "ipv4_addr . ipv4_addr", "verdict", true);
+			this.ruleProtos = new NftMap("rule_protos", "ipv4_addr . ipv4_addr . inet_proto", "verdict", true);
+			this.rulePorts = new NftMap("rule_ports", "ipv4_addr . ipv4_addr . inet_proto . inet_service", "verdict", true);
+
+			this.dnatHosts = new NftMap("dnat_hosts", "ipv4_addr", "ipv4_addr", false);
+			this.dnatPorts = new NftMap("dnat_ports", "ipv4_addr . inet_proto . inet_service", "ipv4_addr", false);
+			this.dnatTargets = new NftMap("dnat_targets", "ipv4_addr", null, false);
+
+			this.wanIfaces = new NftMap("wan_ifaces", "ifname", null, false);
+
+			this.macAddresses = new NftMap("maclist_addresses", "ipv4_addr", null, false);
+			this.macPairs = new NftMap("maclist", "ether_addr . ipv4_addr", null, false);
+
+			this.egressNames = new LinkedHashMap<>();
+			this.egressRules = new ArrayList<>();
+
+			this.machines = new HashMap<>();
+
+			// Only subnets which actually have machines in them can talk
+			this.lanSubnets = getNetworkModel().getSubnets().entrySet()
+					.stream()
+					.filter(subnet -> getNetworkModel().getMachineCount(subnet.getKey()) > 0)
+					.map(subnet -> subnet.getValue().toPrefixBlock().toCompressedString())
+					.collect(Collectors.toList());
+
+			getServerModel().getNetworkInterfaces()
+				.stream()
+				.filter(nic -> Direction.WAN.equals(nic.getDirection()))
+				.forEach(nic -> this.wanIfaces.put(nic.getIface(), null));
+
+			buildMACList();
+		}
+
+		/**
+		 * Build our maclist from every machine on one of our VLANs
+		 */
+		private void buildMACList() {
+			getServerModel().getNetworkInterfaces()
+				.stream()
+				.filter(nic -> nic instanceof MACVLANTrunkModel)
+				.map(MACVLANTrunkModel.class::cast)
+				.flatMap(nic -> nic.getVLANs().stream())
+				.flatMap(vlan -> getNetworkModel().getMachines(vlan.getType()).stream())
+				.filter(machine -> !machine.isType(MachineType.ROUTER))
+				.flatMap(machine -> machine.getNetworkInterfaces().stream())
+				.filter(nic -> nic.getAddresses().isPresent() && nic.getMac().isPresent())
+				.forEach(nic -> {
+					nic.getAddresses().get().stream()
+						.filter(IPAddress::isIPv4)
+						.map(ip -> ip.withoutPrefixLength().toCompressedString())
+						.forEach(ip -> {
+							this.macAddresses.put(ip, null);
+							this.macPairs.put(nic.getMac().get().toColonDelimitedString() + " . " + ip, null);
+						});
+				});
+		}
+
+		private AMachineModel resolve(String label) throws InvalidMachineModelException {
+			AMachineModel machine = this.machines.get(label);
+
+			if (machine == null) {
+				machine = getNetworkModel().getMachineModel(label);
+				this.machines.put(label, machine);
+			}
+
+			return machine;
+		}
+
+		private Collection<String> getAddresses(String label, Boolean localOnly) throws InvalidMachineModelException {
+			return resolve(label).getIPs()
+					.stream()
+					.filter(IPAddress::isIPv4)
+					.filter(ip -> !localOnly || ip.isLocal())
+					.map(ip -> ip.withoutPrefixLength().toCompressedString())
+					.collect(Collectors.toCollection(LinkedHashSet::new));
+		}
+
+		void add(TrafficRule rule) throws InvalidMachineModelException {
+			switch (rule.getTable()) {
+				case DNAT:
+					addDNAT(rule);
+					break;
+				case EGRESS:
+					addEgress(rule);
+					break;
+				case FORWARD:
+					addForward(rule);
+					break;
+				case INGRESS:
+					addIngress(rule);
+					break;
+				default:
+					throw new InvalidFirewallRuleException(rule.getTable() + " is not recognised");
+			}
+		}
+
+		/**
+		 * Allow traffic in from The Internet to the rule's destination(s)
+		 */
+		private void addIngress(TrafficRule rule) throws InvalidMachineModelException {
+			for (HostName destination : rule.getDestinations()) {
+				for (String address : getAddresses(destination.getHost(), false)) {
+					putVerdict(ingressHosts, ingressProtos, ingressPorts, address, rule);
+				}
+			}
+		}
+
+		/**
+		 * Allow traffic from our LAN (or anywhere, if the destination is
+		 * externally accessible) to the rule's destination(s)
+		 */
+		private void addForward(TrafficRule rule) throws InvalidMachineModelException {
+			Boolean destIsExternallyAccessible = false;
+			for (HostName destination : rule.getDestinations()) {
+				destIsExternallyAccessible |= !resolve(destination.getHost()).getExternalIPs().isEmpty();
+			}
+
+			final Collection<String> sources = new ArrayList<>();
+			if (destIsExternallyAccessible) {
+				sources.add("0.0.0.0/0");
+			}
+			else {
+				sources.addAll(this.lanSubnets);
+			}
+
+			for (HostName destination : rule.getDestinations()) {
+				for (String address : getAddresses(destination.getHost(), true)) {
+					for (String source : sources) {
+						putVerdict(ruleHosts, ruleProtos, rulePorts, source + " . " + address, rule);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Allow traffic out from the rule's source to The Internet.
+		 *
+		 * Addresses go into our rule maps. Hostnames can't, as their addresses
+		 * change, so each gets its own set, and a rule matching against it.
+		 */
+		private void addEgress(TrafficRule rule) throws InvalidMachineModelException {
+			final Collection<String> sources = getAddresses(rule.getSource(), false);
+
+			for (HostName destination : rule.getDestinations()) {
+				if (!destination.isAddress()) {
+					addEgressName(sources, destination.getHost(), rule);
+					continue;
+				}
+
+				if (!destination.asAddress().isIPv4()) {
+					continue;
+				}
+
+				final String address = destination.asAddress().toCompressedString();
+				for (String source : sources) {
+					putVerdict(ruleHosts, ruleProtos, rulePorts, source + " . " + address, rule);
+				}
+			}
+		}
+
+		private void addEgressName(Collection<String> sources, String hostname, TrafficRule rule) {
+			if (sources.isEmpty()) {
+				return;
+			}
+
+			// Different hostnames can clean to the same name (a-b.com & a.b.com),
+			// so number them to keep each set's name unique
+			final NftMap names = this.egressNames.computeIfAbsent(hostname,
+					name -> new NftMap("egress_" + this.egressNames.size() + "_" + StringUtils.stringToAlphaNumeric(name, "_"),
+							"ipv4_addr", null, false, true));
+
+			final String match = "ip saddr { " + String.join(", ", sources) + " } ip daddr @" + names.getName();
+
+			if (rule.getPorts().isEmpty()) {
+				if (rule.getEncapsulation() == null) {
+					this.egressRules.add(match + " accept");
+				}
+				else {
+					this.egressRules.add(match + " meta l4proto " + getProto(rule.getEncapsulation()) + " accept");
+				}
+
+				return;
+			}
+
+			final String ports = rule.getPorts()
+					.stream()
+					.map(String::valueOf)
+					.collect(Collectors.joining(", "));
+
+			for (String proto : getProtos(rule)) {
+				this.egressRules.add(match + " meta l4proto " + proto + " th dport { " + ports + " } accept");
+			}
+		}
+
+		/**
+		 * @return a script which resolves each of our Egress hostnames, and
+		 * 			atomically replaces the contents of its set. If a hostname
+		 * 			doesn't resolve, its set is left as it was.
+		 */
+		String getEgressScript() {
+			final StringBuilder script = new StringBuilder();
+
+			script.append("#!/bin/bash\n");
+			script.append("#This file is generated by ThornSec - any changes you make will be overwritten\n");
+			script.append("#Resolves the hostnames in our Egress rules into their nftables sets\n");
+			script.append("\n");
+			script.append("update() {\n");
+			script.append("\tips=\\$(getent ahostsv4 \\\"\\$2\\\" | awk '{print \\$1}' | sort -u | paste -sd, -)\n");
+			script.append("\t[ -n \\\"\\${ips}\\\" ] || return 0\n");
+			script.append("\techo \\\"flush set inet ").append(TABLE).append(" \\$1\\\"\n");
+			script.append("\techo \\\"add element inet ").append(TABLE).append(" \\$1 { \\${ips} }\\\"\n");
+			script.append("}\n");
+			script.append("\n");
+			script.append("{\n");
+			this.egressNames.forEach((hostname, set) -> {
+				script.append("\tupdate ").append(set.getName()).append(" '").append(hostname).append("'\n");
+			});
+			script.append("} | nft -f -\n");
+
+			return script.toString();
+		}
+
+		Boolean hasEgressNames() {
+			return !this.egressNames.isEmpty();
+		}
+
+		/**
+		 * Redirect traffic to the rule's source to its destination instead.
+		 *
+		 * nftables can only DNAT to a single address, so this will be the first
+		 * address of the first destination.
+		 */
+		private void addDNAT(TrafficRule rule) throws InvalidMachineModelException {
+			String target = null;
+			for (HostName destination : rule.getDestinations()) {
+				for (String address : getAddresses(destination.getHost(), false)) {
+					if (target == null) {
+						target = address;
+					}
+
+					// Don't DNAT to a destination if it's the source!
+					dnatTargets.put(address, null);
+				}
+			}
+
+			if (target == null) {
+				return;
+			}
+
+			final Collection<String> originalDestinations = resolve(rule.getSource()).getIPs(true)
+					.stream()
+					.filter(IPAddress::isIPv4)
+					.map(ip -> ip.withoutPrefixLength().toCompressedString())
+					.collect(Collectors.toCollection(LinkedHashSet::new));
+
+			for (String originalDestination : originalDestinations) {
+				if (rule.getPorts().isEmpty()) {
+					dnatHosts.put(originalDestination, target);
+				}
+				else {
+					for (String proto : getProtos(rule)) {
+						for (Integer port : rule.getPorts()) {
+							dnatPorts.put(originalDestination + " . " + proto + " . " + port, target);
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Accept a given key, as specifically as the rule allows
+		 */
+		private void putVerdict(NftMap hosts, NftMap protos, NftMap ports, String key, TrafficRule rule) {
+			if (rule.getPorts().isEmpty()) {
+				if (rule.getEncapsulation() == null) {
+					hosts.put(key, "accept");
+				}
+				else {
+					protos.put(key + " . " + getProto(rule.getEncapsulation()), "accept");
+				}
+
+				return;
+			}
+
+			for (String proto : getProtos(rule)) {
+				for (Integer port : rule.getPorts()) {
+					ports.put(key + " . " + proto + " . " + port, "accept");
+				}
+			}
+		}
+
+		/**
+		 * @return the protocol(s) a rule applies to - if it doesn't say, but has
+		 * 		ports, that's both TCP and UDP
+		 */
+		private Collection<String> getProtos(TrafficRule rule) {
+			final Collection<String> protos = new ArrayList<>();
+
+			if (rule.getEncapsulation() == null) {
+				protos.add(getProto(Encapsulation.TCP));
+				protos.add(getProto(Encapsulation.UDP));
+			}
+			else {
+				protos.add(getProto(rule.getEncapsulation()));
+			}
+
+			return protos;
+		}
+
+		private String getProto(Encapsulation encapsulation) {
+			return encapsulation.toString().toLowerCase();
+		}
+
+		/**
+		 * Write out our whole ruleset
+		 */
+		void appendRuleSet(StringBuilder nft) {
+			nft.append("#!/usr/sbin/nft -f\n");
+			nft.append("#This file is generated by ThornSec - any changes you make will be overwritten\n");
+			nft.append("#Please see https://wiki.nftables.org/ for more details\n");
+			nft.append("\n");
+			nft.append("flush ruleset\n");
+			nft.append("\n");
+
+			nft.append("table inet ").append(TABLE).append(" {\n");
+			for (NftMap map : new NftMap[] { wanIfaces, macAddresses, macPairs, ingressHosts, ingressProtos, ingressPorts,
+					ruleHosts, ruleProtos, rulePorts }) {
+				map.appendDefinition(nft);
+			}
+			this.egressNames.values().forEach(set -> set.appendDefinition(nft));
+
+			nft.append("\tchain ingress {\n");
+			appendLookup(nft, ingressHosts, "ip daddr");
+			appendLookup(nft, ingressProtos, "ip daddr . meta l4proto");
+			appendLookup(nft, ingressPorts, "ip daddr . meta l4proto . th dport");
+			nft.append("\t\tdrop\n");
+			nft.append("\t}\n\n");
+
+			nft.append("\tchain rules {\n");
+			appendLookup(nft, ruleHosts, "ip saddr . ip daddr");
+			appendLookup(nft, ruleProtos, "ip saddr . ip daddr . meta l4proto");
+			appendLookup(nft, rulePorts, "ip saddr . ip daddr . meta l4proto . th dport");
+			this.egressRules.forEach(rule -> nft.append("\t\t").append(rule).append("\n"));
+			nft.append("\t}\n\n");
+
+			nft.append("\tchain input {\n");
+			nft.append("\t\ttype filter hook input priority 0; policy drop;\n");
+			nft.append("\t\tct state established,related accept\n");
+			nft.append("\t\tct state invalid drop\n");
+			nft.append("\t\tiif lo accept\n");
+			appendMACList(nft);
+			appendFromInternet(nft);
+			// Our LAN needs to be able to talk DHCP to us
+			appendFromLAN(nft, "udp dport { 67, 68 } accept");
+			nft.append("\t\tjump rules\n");
+			nft.append("\t\treject\n");
+			nft.append("\t}\n\n");
+
+			nft.append("\tchain forward {\n");
+			nft.append("\t\ttype filter hook forward priority 0; policy drop;\n");
+			nft.append("\t\tct state established,related accept\n");
+			nft.append("\t\tct state invalid drop\n");
+			appendMACList(nft);
+			nft.append("\t\tct status dnat accept\n");
+			appendFromInternet(nft);
+			nft.append("\t\tjump rules\n");
+			nft.append("\t\treject\n");
+			nft.append("\t}\n\n");
+
+			nft.append("\tchain output {\n");
+			nft.append("\t\ttype filter hook output priority 0; policy accept;\n");
+			nft.append("\t}\n");
+			nft.append("}\n\n");
+
+			nft.append("table ip ").append(TABLE).append("_nat {\n");
+			for (NftMap map : new NftMap[] { wanIfaces, dnatTargets, dnatHosts, dnatPorts }) {
+				map.appendDefinition(nft);
+			}
+
+			nft.append("\tchain prerouting {\n");
+			nft.append("\t\ttype nat hook prerouting priority dstnat; policy accept;\n");
+			if (!dnatTargets.isEmpty()) {
+				if (!dnatPorts.isEmpty()) {
+					nft.append("\t\tip saddr != @").append(dnatTargets.getName())
+						.append(" dnat ip to ip daddr . meta l4proto . th dport map @").append(dnatPorts.getName()).append("\n");
+				}
+				if (!dnatHosts.isEmpty()) {
+					nft.append("\t\tip saddr != @").append(dnatTargets.getName())
+						.append(" dnat ip to ip daddr map @").append(dnatHosts.getName()).append("\n");
+				}
+			}
+			nft.append("\t}\n\n");
+
+			//Masquerade any internal traffic
+			nft.append("\tchain postrouting {\n");
+			nft.append("\t\ttype nat hook postrouting priority srcnat; policy accept;\n");
+			if (!wanIfaces.isEmpty()) {
+				nft.append("\t\toifname @").append(wanIfaces.getName()).append(" masquerade\n");
+			}
+			nft.append("\t}\n");
+			nft.append("}\n");
+		}
+
+		private void appendLookup(StringBuilder nft, NftMap map, String selector) {
+			if (map.isEmpty()) {
+				return;
+			}
+
+			nft.append("\t\t").append(selector).append(" vmap @").append(map.getName()).append("\n");
+		}
+
+		/**
+		 * Drop anything from one of our machines' addresses which isn't from
+		 * that machine's MAC address
+		 */
+		private void appendMACList(StringBuilder nft) {
+			if (macPairs.isEmpty()) {
+				return;
+			}
+
+			nft.append("\t\tip saddr @").append(macAddresses.getName())
+				.append(" ether saddr . ip saddr != @").append(macPairs.getName()).append(" drop\n");
+		}
+
+		/**
+		 * Anything from The Internet only gets as far as our ingress rules
+		 */
+		private void appendFromInternet(StringBuilder nft) {
+			if (wanIfaces.isEmpty()) {
+				return;
+			}
+
+			nft.append("\t\tiifname @").append(wanIfaces.getName()).append(" jump ingress\n");
+		}
+
+		private void appendFromLAN(StringBuilder nft, String statement) {
+			nft.append("\t\t");
+			if (!wanIfaces.isEmpty()) {
+				nft.append("iifname != @").append(wanIfaces.getName()).append(" ");
+			}
+			nft.append(statement).append("\n");
+		}
+	}
+
+	public NftablesFirewall(ServerModel me) {
+		super(me);
+	}
+
+	@Override
+	public Collection<IUnit> getInstalled() throws ARuntimeException {
+		final Collection<IUnit> units = new ArrayList<>();
+
+		units.add(new InstalledUnit("nftables", "proceed", "nftables"));
+
+		return units;
+	}
+
+	@Override
+	public Collection<IUnit> getPersistentConfig() throws ARuntimeException {
+		final Collection<IUnit> units = new ArrayList<>();
+
+		units.add(new EnabledServiceUnit("nftables", "nftables_installed", "nftables",
+				"I couldn't enable your firewall to start at boot. This means your network will be unprotected after a reboot!"));
+
+		return units;
+	}
+
+	/**
+	 * Compile every machine's TrafficRules
+	 *
+	 * @return the compiled rules
+	 * @throws InvalidMachineModelException if a rule refers to a machine which
+	 * 			doesn't exist
+	 */
+	private RuleSetBuilder buildRuleSet() throws InvalidMachineModelException {
+		final RuleSetBuilder builder = new RuleSetBuilder();
+
+		if (getMachineModel().isType(MachineType.ROUTER)) {
+			for (AMachineModel machine : getNetworkModel().getMachines().values()) {
+				for (TrafficRule rule : TrafficRuleNormaliser.normalise(machine.getFirewallRules())) {
+					builder.add(rule);
+				}
+			}
+		}
+
+		return builder;
+	}
+
+	@Override
+	public Collection<IUnit> getLiveConfig() throws ARuntimeException {
+		final Collection<IUnit> units = new ArrayList<>();
+
+		final RuleSetBuilder builder = buildRuleSet();
+
+		final StringBuilder nft = new StringBuilder();
+		builder.appendRuleSet(nft);
+
+		final FileUnit ruleset = new FileUnit("nftables_ruleset", "nftables_installed", CONFIG_FILE);
+		ruleset.appendText(nft.toString());
+
+		units.add(ruleset);
+
+		String load = "sudo nft -f " + CONFIG_FILE;
+
+		if (builder.hasEgressNames()) {
+			final FileUnit egress = new FileUnit("nftables_egress_script", "nftables_installed", EGRESS_SCRIPT,
+					"root", "root", 0750, "I couldn't write out the script which keeps your Egress hostnames up to date.");
+			egress.appendText(builder.getEgressScript());
+
+			units.add(egress);
+
+			// Hostnames' addresses change, so keep their sets up to date
+			units.add(new CrontabUnit("nftables_egress", "nftables_egress_script", true, "root", EGRESS_SCRIPT,
+					"*", "*", "*", "*", "*/5"));
+
+			// Loading our ruleset empties their sets, so fill them straight back in
+			load += " && sudo " + EGRESS_SCRIPT;
+		}
+
+		// (Re)load our ruleset if it's changed since we last loaded it
+		units.add(new SimpleUnit("nftables_ruleset_loaded", "nftables_ruleset",
+				load + " && sudo touch " + LOADED_FILE,
+				"[ " + LOADED_FILE + " -nt " + CONFIG_FILE + " ] && echo pass || echo fail", "pass", "pass",
+				"I couldn't load your firewall's ruleset. Check it with nft -c -f " + CONFIG_FILE));
+
+		return units;
+	}
+
+	@Override
+	public Collection<IUnit> getPersistentFirewall() throws AThornSecException {
+		return new ArrayList<>();
+	}
+
+	@Override
+	public Collection<IUnit> getLiveFirewall() throws ARuntimeException {
+		return new ArrayList<>();
+	}
+}
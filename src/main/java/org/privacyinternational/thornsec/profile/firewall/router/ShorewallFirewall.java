@@ -7,12 +7,22 @@
  */
 package org.privacyinternational.thornsec.profile.firewall.router;
 
+import java.nio.file.Path;
+import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.privacyinternational.thornsec.core.StringUtils;
 import org.privacyinternational.thornsec.core.data.machine.AMachineData.MachineType;
@@ -33,12 +43,15 @@ import org.privacyinternational.thornsec.core.model.machine.ServerModel;
 import org.privacyinternational.thornsec.core.model.machine.configuration.networking.MACVLANModel;
 import org.privacyinternational.thornsec.core.model.machine.configuration.networking.MACVLANTrunkModel;
 import org.privacyinternational.thornsec.core.model.machine.configuration.networking.NetworkInterfaceModel;
+import org.privacyinternational.thornsec.core.unit.SimpleUnit;
 import org.privacyinternational.thornsec.core.unit.fs.FileEditUnit;
 import org.privacyinternational.thornsec.core.unit.fs.FileUnit;
 import org.privacyinternational.thornsec.core.unit.pkg.InstalledUnit;
 import inet.ipaddr.HostName;
 import inet.ipaddr.IPAddress;
+import inet.ipaddr.IPAddressString;
 import org.privacyinternational.thornsec.profile.firewall.AFirewallProfile;
+import org.privacyinternational.thornsec.profile.firewall.TrafficRuleNormaliser;
 import org.privacyinternational.thornsec.profile.type.Router;
 
 /**
@@ -95,6 +108,8 @@ public class ShorewallFirewall extends AFirewallProfile {
 	}
 
 	private static String CONFIG_BASEDIR = "/etc/shorewall";
+	private static String CONFIG_IPSETS = CONFIG_BASEDIR + "/ipsets";
+	private static String IPSETS_LOADED = "/run/thornsec-ipsets.loaded";
 
 	private class ShorewallRule {
 		private String macro;
@@ -115,6 +130,9 @@ public class ShorewallFirewall extends AFirewallProfile {
 
 		private String rate;
 
+		private long weight;
+		private String comment;
+
 		public ShorewallRule() {
 			macro = null;
 			action = null;
@@ -131,23 +149,34 @@ public class ShorewallFirewall extends AFirewallProfile {
 			origDest = null;
 
 			rate = null;
+
+			weight = 0;
+			comment = null;
 		}
 
-		public ShorewallRule(TrafficRule rule) throws InvalidFirewallRuleException {
+		/**
+		 * Compile a TrafficRule into its Shorewall equivalent
+		 *
+		 * @param rule the TrafficRule
+		 * @param resolver resolves machine labels to their zones & addresses
+		 * @throws InvalidMachineModelException if the rule refers to a machine
+		 * 		which doesn't exist, or its table isn't recognised
+		 */
+		public ShorewallRule(TrafficRule rule, ZoneResolver resolver) throws InvalidMachineModelException {
 			this();
 
 			switch (rule.getTable()) {
 				case DNAT:
-					buildDNAT(rule);
+					buildDNAT(rule, resolver);
 					break;
 				case EGRESS:
 					buildEgress(rule);
 					break;
 				case FORWARD:
-					buildForward(rule);
+					buildForward(rule, resolver);
 					break;
 				case INGRESS:
-					buildIngress(rule);
+					buildIngress(rule, resolver);
 					break;
 				default:
 					throw new InvalidFirewallRuleException(rule.getTable() + " is not recognised");
@@ -160,48 +189,17 @@ public class ShorewallFirewall extends AFirewallProfile {
 		 * The rule's destinationZone must be a valid machine label.
 		 * 
 		 * @param rule Ingress TrafficRule
+		 * @param resolver the resolver for this set of rules
 		 */
-		private void buildIngress(TrafficRule rule) {
+		private void buildIngress(TrafficRule rule, ZoneResolver resolver) throws InvalidMachineModelException {
+			final Collection<ResolvedMachine> destinations = resolver.resolve(rule.getDestinations());
+
 			this.setAction(Action.ACCEPT);
 			this.setSourceZone(cleanZone(ParentZone.INTERNET.toString()));
 			this.setProto(rule.getEncapsulation());
 			this.setDPorts(rule.getPorts());
-			this.setDestinationZone(
-				rule.getDestinations()
-					.stream()
-					.<String>map(destination -> cleanZone(destination.getHost()))
-					.collect(Collectors.joining(","))
-			);
-			this.setDestinationSubZone(
-				rule.getDestinations()
-					.stream()
-					.<String>map(destination -> destination.getHost())
-					.<Collection<IPAddress>>map(label -> this.getMachineModel(label).getIPs())
-					.flatMap(Collection::stream)
-					.<String>map(ip -> ip.withoutPrefixLength().toCompressedString())
-					.collect(Collectors.joining(","))
-			);
-		}
-
-		/**
-		 * This "overrides" the getMachineModel method from our NetworkModel.
-		 * 
-		 * This method is to be used on the assumption that getMachineModel
-		 * will never throw an exception.
-		 * @param label Machine's label
-		 * @return the requested AMachineModel
-		 */
-		private AMachineModel getMachineModel(String label) {
-			AMachineModel machine = null;
-
-			try {
-				machine = getNetworkModel().getMachineModel(label);
-			} catch (InvalidMachineModelException e) {
-				;; // Famous last words, as ever...
-				e.printStackTrace();
-			}
-
-			return machine;
+			this.setDestinationZone(joinZones(destinations));
+			this.setDestinationSubZone(joinAddresses(destinations, false));
 		}
 
 		/**
@@ -210,52 +208,33 @@ public class ShorewallFirewall extends AFirewallProfile {
 		 * The rule's destinationZone must be a valid machine label.
 		 * 
 		 * @param rule Forward TrafficRule
+		 * @param resolver the resolver for this set of rules
 		 */
-		private void buildForward(TrafficRule rule) throws InvalidFirewallRuleException {
-			Boolean destIsExternallyAccessible = rule.getDestinations()
+		private void buildForward(TrafficRule rule, ZoneResolver resolver) throws InvalidMachineModelException {
+			final Collection<ResolvedMachine> destinations = resolver.resolve(rule.getDestinations());
+
+			Boolean destIsExternallyAccessible = destinations
 					.stream()
-					.map(destination -> destination.getHost())
-					.filter(label -> !this.getMachineModel(label).getExternalIPs().isEmpty())
-					.count() > 0;
+					.anyMatch(destination -> destination.isExternallyAccessible());
 
 			this.setAction(Action.ACCEPT);
 			if (destIsExternallyAccessible) {
 				this.setSourceZone("any");
 			}
 			else {
-				this.setSourceZone(
-					getNetworkModel().getSubnets().keySet()
-					 .stream()
-					 .filter(type -> !getNetworkModel().getMachines(type).isEmpty())
-					 .map(type -> cleanZone(type))
-					 .collect(Collectors.joining(","))
-				);
+				this.setSourceZone(resolver.getSubnetZones());
 			}
 			this.setProto(rule.getEncapsulation());
 			this.setDPorts(rule.getPorts());
-			this.setDestinationZone(
-				rule.getDestinations()
-					.stream()
-					.map(destination -> cleanZone(destination.getHost()))
-					.collect(Collectors.joining(","))
-			);
-			this.setDestinationSubZone(
-				rule.getDestinations()
-					.stream()
-					.map(destination -> destination.getHost())
-					.map(label -> this.getMachineModel(label).getIPs())
-					.flatMap(Collection::stream)
-					.filter(ip -> ip.isLocal())
-					.map(ip -> ip.withoutPrefixLength().toCompressedString())
-					.collect(Collectors.joining(","))
-			);
+			this.setDestinationZone(joinZones(destinations));
+			this.setDestinationSubZone(joinAddresses(destinations, true));
 		}
 
 		/**
 		 * Ingests an Egress TrafficRule, turning it into the Shorewall equivalent.
 		 * @param rule Egress TrafficRule
 		 */
-		private void buildEgress(TrafficRule rule) throws InvalidFirewallRuleException {
+		private void buildEgress(TrafficRule rule) {
 			this.setAction(Action.ACCEPT);
 			this.setSourceZone(cleanZone(rule.getSource()));
 			this.setProto(rule.getEncapsulation());
@@ -264,7 +243,9 @@ public class ShorewallFirewall extends AFirewallProfile {
 			this.setDestinationSubZone(
 				rule.getDestinations()
 					.stream()
-					.map(destination -> destination.getHost())
+					.map(destination -> (destination.isAddress() && destination.asAddress().isMultiple())
+											? destination.asAddress().toCompressedString()
+											: destination.getHost())
 					.collect(Collectors.joining(","))
 			);
 		}
@@ -275,50 +256,39 @@ public class ShorewallFirewall extends AFirewallProfile {
 		 * The rule's sourceZone and destinationZone must be valid machine labels
 		 * 
 		 * @param rule Ingress TrafficRule
+		 * @param resolver the resolver for this set of rules
 		 */
-		private void buildDNAT(TrafficRule rule) throws InvalidFirewallRuleException {
+		private void buildDNAT(TrafficRule rule, ZoneResolver resolver) throws InvalidMachineModelException {
+			final Collection<ResolvedMachine> destinations = resolver.resolve(rule.getDestinations());
+			final String zones = joinZones(destinations);
+			final String addresses = joinAddresses(destinations, false);
+
 			this.setAction(Action.DNAT);
 
 			//don't DNAT to us if we're the source!
 			this.setInvertSource(true);
-			this.setSourceZone(
-				rule.getDestinations()
-					.stream()
-					.map(destination -> cleanZone(destination.getHost()))
-					.collect(Collectors.joining(","))
-			);
-			this.setSourceSubZone(
-				rule.getDestinations()
-					.stream()
-					.map(destination -> destination.getHost())
-					.map(label -> this.getMachineModel(label).getIPs())
-					.flatMap(Collection::stream)
-					.map(ip -> ip.withoutPrefixLength().toCompressedString())
-					.collect(Collectors.joining(","))
-			);
+			this.setSourceZone(zones);
+			this.setSourceSubZone(addresses);
 
 			//Traffic's now coming to us
-			this.setDestinationZone(
-				rule.getDestinations()
-					.stream()
-					.map(destination -> cleanZone(destination.getHost()))
-					.collect(Collectors.joining(","))
-			);
-			this.setDestinationSubZone(
-				rule.getDestinations()
-					.stream()
-					.map(destination -> destination.getHost())
-					.map(label -> this.getMachineModel(label).getIPs())
-					.flatMap(Collection::stream)
-					.map(ip -> ip.withoutPrefixLength().toCompressedString())
-					.collect(Collectors.joining(","))
-			);
+			this.setDestinationZone(zones);
+			this.setDestinationSubZone(addresses);
 			this.setDPorts(rule.getPorts());
 			this.setProto(rule.getEncapsulation());
-			this.setOrigDest(
-				this.getMachineModel(rule.getSource())
-					.getIPs(true)
-			);
+			this.setOrigDest(resolver.resolve(rule.getSource()).getAllAddresses());
+		}
+
+		private String joinZones(Collection<ResolvedMachine> machines) {
+			return machines.stream()
+					.map(ResolvedMachine::getZone)
+					.collect(Collectors.joining(","));
+		}
+
+		private String joinAddresses(Collection<ResolvedMachine> machines, boolean localOnly) {
+			return machines.stream()
+					.map(machine -> localOnly ? machine.getLocalAddresses() : machine.getAddresses())
+					.flatMap(Collection::stream)
+					.collect(Collectors.joining(","));
 		}
 
 		private void setMacro(String macro) {
@@ -365,49 +335,229 @@ public class ShorewallFirewall extends AFirewallProfile {
 			this.rate = rate;
 		}
 
+		private void setWeight(long weight) {
+			this.weight = weight;
+		}
+
+		private long getWeight() {
+			return this.weight;
+		}
+
+		/**
+		 * Set a comment to be written at the end of this rule's line
+		 */
+		private void setComment(String comment) {
+			this.comment = comment;
+		}
+
+		/**
+		 * @return the addresses this rule matches traffic going to. For a DNAT,
+		 * 		that's where the traffic was originally going.
+		 */
+		private Collection<String> getMatchedAddresses() {
+			if (Action.DNAT.equals(this.action)) {
+				if (this.origDest == null) {
+					return null;
+				}
+
+				return this.origDest.stream()
+						.map(dest -> dest.withoutPrefixLength().toCompressedString())
+						.collect(Collectors.toList());
+			}
+
+			if (this.destinationSubZone == null || this.destinationSubZone.isEmpty()) {
+				return null;
+			}
+
+			return Arrays.asList(this.destinationSubZone.split(","));
+		}
+
+		/**
+		 * Count how many packets have hit this rule's traffic on a live firewall
+		 *
+		 * @param counters the live firewall's counters
+		 * @return the number of packets
+		 */
+		private long countHits(IptablesCounters counters) {
+			final Collection<String> addresses = getMatchedAddresses();
+			if (addresses == null) {
+				return 0;
+			}
+
+			final String _proto = (proto == null) ? null : proto.toString().toLowerCase();
+
+			long hits = 0;
+			for (String address : addresses) {
+				if (dPorts == null || dPorts.isEmpty()) {
+					hits += counters.get(address, _proto, null);
+				}
+				else {
+					for (Integer port : dPorts) {
+						hits += counters.get(address, _proto, port.toString());
+					}
+				}
+			}
+
+			return hits;
+		}
+
+		/**
+		 * Can this rule and another be swapped, without changing what our
+		 * firewall lets through?
+		 *
+		 * Two ACCEPTs can always be swapped, as a packet's accepted by either
+		 * whichever comes first. Otherwise, they can only be swapped if there's
+		 * no packet they could both match.
+		 *
+		 * @param other the other rule
+		 * @return true if they can be swapped, false if we can't prove it
+		 */
+		protected boolean commutesWith(ShorewallRule other) {
+			if (other instanceof Comment) {
+				return true;
+			}
+
+			if (Action.ACCEPT.equals(this.action) && Action.ACCEPT.equals(other.action)
+					&& this.macro == null && other.macro == null && this.rate == null && other.rate == null) {
+				return true;
+			}
+
+			// A DNAT and a non-DNAT match on different things, so we can't compare them
+			if (Action.DNAT.equals(this.action) != Action.DNAT.equals(other.action)) {
+				return false;
+			}
+
+			return isDisjointFrom(other);
+		}
+
+		/**
+		 * @return true if we can prove there's no packet which could match both
+		 * 		this rule and another
+		 */
+		private boolean isDisjointFrom(ShorewallRule other) {
+			if (this.proto != null && other.proto != null && !this.proto.equals(other.proto)) {
+				return true;
+			}
+
+			if (this.dPorts != null && !this.dPorts.isEmpty() && other.dPorts != null && !other.dPorts.isEmpty()
+					&& Collections.disjoint(this.dPorts, other.dPorts)) {
+				return true;
+			}
+
+			final Collection<IPAddress> ours = parseAddresses(getMatchedAddresses());
+			final Collection<IPAddress> theirs = parseAddresses(other.getMatchedAddresses());
+			if (ours == null || theirs == null) {
+				return false;
+			}
+
+			for (IPAddress our : ours) {
+				for (IPAddress their : theirs) {
+					if (our.contains(their) || their.contains(our)) {
+						return false;
+					}
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * @return the given addresses, or null if any of them aren't an
+		 * 		address (e.g. they're a hostname)
+		 */
+		private Collection<IPAddress> parseAddresses(Collection<String> addresses) {
+			if (addresses == null) {
+				return null;
+			}
+
+			final Collection<IPAddress> parsed = new ArrayList<>();
+			for (String address : addresses) {
+				final IPAddress ip = new IPAddressString(address).getAddress();
+				if (ip == null) {
+					return null;
+				}
+				parsed.add(ip.toPrefixBlock());
+			}
+
+			return parsed;
+		}
+
 		public String getRule() {
-			String _action = (macro == null) ? action.toString() : macro+"("+action.toString()+")";
-			String _dPorts = null;
-			String _sPorts = null;
-			String _origDest = null;
-			String _sourceZone = sourceZone;
-			String _destinationZone = destinationZone;
-			
+			final StringBuilder rule = new StringBuilder();
+			appendRule(rule);
+
+			return rule.toString();
+		}
+
+		/**
+		 * Append this rule, as a line in Shorewall's rules file (without a
+		 * trailing carriage return) to a given StringBuilder
+		 *
+		 * @param rule where to write the rule
+		 */
+		public void appendRule(StringBuilder rule) {
+			rule.append((macro == null) ? action.toString() : macro + "(" + action.toString() + ")");
+			rule.append("\t");
+
 			if (this.invertSource) {
-				_sourceZone = "all!" + sourceZone;
+				rule.append("all!");
+			}
+			rule.append(sourceZone);
+			if (sourceSubZone != null) {
+				rule.append(":").append(sourceSubZone);
+			}
+			rule.append("\t");
+
+			rule.append(destinationZone);
+			if (destinationSubZone != null) {
+				rule.append(":");
+				rule.append(Arrays.stream(destinationSubZone.split(","))
+						.map(this::qualifyHost)
+						.collect(Collectors.joining(",")));
 			}
+			rule.append("\t");
 
-			String _egress = this.destinationSubZone;
-			if ((this.destinationSubZone != null)
-					&& !(new HostName(this.destinationSubZone).isAddress())
-					&& !(this.destinationSubZone.startsWith("&"))
-					&& !(this.destinationSubZone.matches(".*\\.[0-9]+$"))) {
-				_egress += ".";
-			}		
-			if (dPorts != null) {
-				_dPorts = dPorts.stream().map(Object::toString).collect(Collectors.joining(","));
+			rule.append((proto != null) ? proto.toString().toLowerCase() : "-").append("\t");
+			appendJoined(rule, dPorts, Object::toString);
+			appendJoined(rule, sPorts, Object::toString);
+			appendJoined(rule, origDest, dest -> dest.withoutPrefixLength().toCompressedString());
+
+			if (rate != null) {
+				rule.append(rate);
 			}
-			if (sPorts != null) {
-				_sPorts = sPorts.stream().map(Object::toString).collect(Collectors.joining(","));
+			if (this.comment != null) {
+				rule.append("\t# ").append(this.comment);
 			}
-			if (origDest != null) {
-				_origDest = this.origDest.stream().map(dest -> dest.withoutPrefixLength().toCompressedString())
-						.collect(Collectors.joining(","));
+		}
+
+		/**
+		 * Shorewall wants hostnames fully qualified (with a trailing dot) so it
+		 * doesn't try and resolve them against our search domain. Addresses,
+		 * subnets (v4 or v6) and ipsets are left as they are.
+		 */
+		private String qualifyHost(String destination) {
+			if (destination.startsWith("&") || new IPAddressString(destination).isIPAddress()) {
+				return destination;
 			}
 
-			String rule = "";
-			rule += _action + "\t";
-			rule += _sourceZone;
-			rule += (sourceSubZone != null) ? ":" + sourceSubZone.toString() + "\t" : "\t";
-			rule += _destinationZone;
-			rule += (_egress != null) ? ":" + _egress + "\t" : "\t";
-			rule += (proto != null) ? proto.toString().toLowerCase() + "\t" : "-\t";
-			rule += (_dPorts != null) ? _dPorts + "\t" : "-\t";
-			rule += (_sPorts != null) ? _sPorts + "\t" : "-\t";
-			rule += (_origDest != null) ? _origDest + "\t" : "-\t";
-			rule += (rate != null) ? rate : "";
+			return destination + ".";
+		}
+
+		private <T> void appendJoined(StringBuilder rule, Collection<T> values, Function<T, String> toString) {
+			if (values == null) {
+				rule.append("-\t");
+				return;
+			}
 
-			return rule;
+			boolean first = true;
+			for (final T value : values) {
+				if (!first) {
+					rule.append(",");
+				}
+				rule.append(toString.apply(value));
+				first = false;
+			}
+			rule.append("\t");
 		}
 	}
 
@@ -419,11 +569,18 @@ public class ShorewallFirewall extends AFirewallProfile {
 		}
 
 		@Override
-		public String getRule() {
-			return "# " + this.comment;
+		protected boolean commutesWith(ShorewallRule other) {
+			return true;
+		}
+
+		@Override
+		public void appendRule(StringBuilder rule) {
+			rule.append("# ").append(this.comment);
 		}
 	}
 
+	private static final Map<String, String> cleanZones = new ConcurrentHashMap<>();
+
 	private Router myRouter;
 
 	public ShorewallFirewall(ServerModel me) {
@@ -434,6 +591,9 @@ public class ShorewallFirewall extends AFirewallProfile {
 	/**
 	 * Zones must be a maximum of 10 alpha-numeric chars long
 	 *
+	 * Zone names are only ever a function of what they're cleaning, so once
+	 * we've cleaned one, we keep hold of it.
+	 *
 	 * @param zone
 	 * @return valid zone name
 	 */
@@ -442,7 +602,11 @@ public class ShorewallFirewall extends AFirewallProfile {
 			return null;
 		}
 
-		String _zone = zone.toString();
+		return cleanZones.computeIfAbsent(zone.toString(), ShorewallFirewall::buildZone);
+	}
+
+	private static String buildZone(String zone) {
+		String _zone = zone;
 		String prefix = "";
 
 		if (_zone.startsWith("$")) {
@@ -463,7 +627,7 @@ public class ShorewallFirewall extends AFirewallProfile {
 				e.printStackTrace();
 			}
 
-			md.update(zone.toString().getBytes());
+			md.update(zone.getBytes());
 
 			final byte byteData[] = md.digest();
 			final StringBuffer hashCodeBuffer = new StringBuffer();
@@ -481,38 +645,183 @@ public class ShorewallFirewall extends AFirewallProfile {
 		return prefix + _zone;
 	}
 
+	/**
+	 * A machine, as far as our rules are concerned: its zone, and its
+	 * addresses, already turned into the strings we write out
+	 */
+	private static class ResolvedMachine {
+		private final String zone;
+		private final Collection<String> addresses;
+		private final Collection<String> localAddresses;
+		private final Collection<IPAddress> allAddresses;
+		private final Boolean externallyAccessible;
+
+		ResolvedMachine(String zone, AMachineModel machine) {
+			this.zone = zone;
+			this.addresses = new ArrayList<>();
+			this.localAddresses = new ArrayList<>();
+
+			machine.getIPs().forEach(ip -> {
+				final String address = ip.withoutPrefixLength().toCompressedString();
+
+				this.addresses.add(address);
+				if (ip.isLocal()) {
+					this.localAddresses.add(address);
+				}
+			});
+
+			this.allAddresses = machine.getIPs(true);
+			this.externallyAccessible = !machine.getExternalIPs().isEmpty();
+		}
+
+		String getZone() {
+			return this.zone;
+		}
+
+		Collection<String> getAddresses() {
+			return this.addresses;
+		}
+
+		Collection<String> getLocalAddresses() {
+			return this.localAddresses;
+		}
+
+		Collection<IPAddress> getAllAddresses() {
+			return this.allAddresses;
+		}
+
+		Boolean isExternallyAccessible() {
+			return this.externallyAccessible;
+		}
+	}
+
+	/**
+	 * Resolves machine labels to their zones and addresses, once per label,
+	 * for a single run of building our rules.
+	 *
+	 * Don't keep hold of one of these between runs - it won't notice if the
+	 * network changes underneath it.
+	 */
+	private class ZoneResolver {
+		private final Map<String, ResolvedMachine> machines;
+		private String subnetZones;
+
+		ZoneResolver() {
+			this.machines = new HashMap<>();
+			this.subnetZones = null;
+		}
+
+		ResolvedMachine resolve(String label) throws InvalidMachineModelException {
+			ResolvedMachine machine = this.machines.get(label);
+
+			if (machine == null) {
+				machine = new ResolvedMachine(cleanZone(label), getNetworkModel().getMachineModel(label));
+				this.machines.put(label, machine);
+			}
+
+			return machine;
+		}
+
+		Collection<ResolvedMachine> resolve(Collection<HostName> destinations) throws InvalidMachineModelException {
+			final Collection<ResolvedMachine> resolved = new ArrayList<>();
+
+			for (HostName destination : destinations) {
+				resolved.add(resolve(destination.getHost()));
+			}
+
+			return resolved;
+		}
+
+		/**
+		 * @return a comma-delimited list of the zones of every subnet which
+		 * 		actually has machines in it
+		 */
+		String getSubnetZones() {
+			if (this.subnetZones == null) {
+				this.subnetZones = getNetworkModel().getSubnets().keySet()
+						.stream()
+						.filter(type -> getNetworkModel().getMachineCount(type) > 0)
+						.map(type -> cleanZone(type))
+						.collect(Collectors.joining(","));
+			}
+
+			return this.subnetZones;
+		}
+	}
+
 	@Override
 	public Collection<IUnit> getInstalled() throws ARuntimeException {
 		final Collection<IUnit> units = new ArrayList<>();
 
 		units.add(new InstalledUnit("shorewall", "proceed", "shorewall"));
+		units.add(new InstalledUnit("ipset", "proceed", "ipset"));
 
 		return units;
 	}
 
 	/**
-	 * Builds our Maclist file as per http://shorewall.org/manpages/shorewall-maclist.html
-	 * 
-	 * This maclist file reflects the whole network
-	 * 
-	 * @return the contents of the maclist file
-	 * @throws InvalidServerException if you don't have exactly 1 router on your network
+	 * Builds our ipsets, in the format expected by ipset restore.
+	 *
+	 * Each VLAN gets two sets: one of its machines' addresses (hash:ip) and
+	 * one of its machines' address/MAC pairs (hash:ip,mac). Checking whether
+	 * a packet belongs is then a hash lookup, rather than walking a list.
+	 *
+	 * Each set is built up next to the live one and swapped in, so updating
+	 * them is atomic and doesn't need the firewall reloading.
+	 *
+	 * @return the contents of the ipset restore file
+	 * @throws InvalidProfileException if you don't have exactly 1 router on your network
 	 */
-	private Collection<String> getMaclistFile() throws InvalidProfileException {
-		final Collection<String> maclist = new ArrayList<>();
+	private Collection<String> getIPSetsFile() throws InvalidProfileException {
+		final Collection<String> ipsets = new ArrayList<>();
 
-		getRouter().getNetworkInterfaces()
-		.stream()
-		.filter(nic -> nic instanceof MACVLANTrunkModel)
-		.map(MACVLANTrunkModel.class::cast)
-		.forEach(nic -> {
-			nic.getVLANs().forEach(vlan -> {
-				Set<AMachineModel> machines = getNetworkModel().getMachines(vlan.getType());
-				maclist.addAll(machines2Maclist(vlan.getType(), machines));
-			});
+		getVLANs(getRouter()).forEach(vlan -> {
+			Set<AMachineModel> machines = getNetworkModel().getMachines(vlan.getType());
+			ipsets.addAll(machines2IPSets(vlan.getType(), machines));
 		});
 
-		return maclist;
+		return ipsets;
+	}
+
+	/**
+	 * Builds our blrules file as per http://shorewall.org/manpages/shorewall-blrules.html
+	 *
+	 * This is where we enforce our maclist: traffic from one of a VLAN's
+	 * addresses which isn't from its corresponding MAC address is dropped.
+	 *
+	 * @return the contents of the blrules file
+	 * @throws InvalidProfileException if you don't have exactly 1 router on your network
+	 */
+	private Collection<String> getBlRulesFile() throws InvalidProfileException {
+		final Collection<String> blrules = new ArrayList<>();
+
+		blrules.add("#Please see http://shorewall.org/manpages/shorewall-blrules.html for more details");
+		blrules.add("#action\tsource\tdestination");
+
+		getVLANs(getRouter()).forEach(vlan -> {
+			blrules.add("#" + vlan.getType().toString());
+			blrules.add("DROP"
+						+ "\tall-:+[" + getIPSetName(vlan.getType(), "ip") + ",!" + getIPSetName(vlan.getType(), "mac") + "[src,src]]"
+						+ "\tall");
+		});
+
+		return blrules;
+	}
+
+	/**
+	 * @return all of the VLANs on a given machine's trunk(s)
+	 */
+	private Collection<MACVLANModel> getVLANs(ServerModel machine) {
+		return machine.getNetworkInterfaces()
+				.stream()
+				.filter(nic -> nic instanceof MACVLANTrunkModel)
+				.map(MACVLANTrunkModel.class::cast)
+				.flatMap(nic -> nic.getVLANs().stream())
+				.collect(Collectors.toList());
+	}
+
+	private String getIPSetName(MachineType type, String kind) {
+		return type.name().toLowerCase() + "_" + kind;
 	}
 
 	/**
@@ -559,28 +868,58 @@ public class ShorewallFirewall extends AFirewallProfile {
 		return hosts;
 	}
 
-	private Collection<ShorewallRule> getRulesFile() throws InvalidServerException, InvalidMachineModelException {
-		Collection<ShorewallRule> rules = new ArrayList<>();
+	/**
+	 * Compile every machine's TrafficRules into their Shorewall equivalents.
+	 *
+	 * Each machine label is only resolved to its zone & addresses once, no
+	 * matter how many rules refer to it.
+	 *
+	 * Each machine's rules are normalised first, so duplicate rules are
+	 * dropped and overlapping ones merged.
+	 *
+	 * @return our rules, in the order they should be written out
+	 */
+	private Collection<ShorewallRule> getRulesFile() throws InvalidServerException, InvalidMachineModelException, InvalidProfileException {
+		List<ShorewallRule> rules = new ArrayList<>();
 
 		if (getMachineModel().isType(MachineType.ROUTER)) {
+			final ZoneResolver resolver = new ZoneResolver();
+			final Boolean ordered = getNetworkModel().orderFirewallRules();
+			final IptablesCounters counters = ordered ? getCounters() : null;
+
 			// Iterate over every machine to build all of its rules
 			getNetworkModel().getMachines().values().forEach((machine) -> {
 				if (machine.getFirewallRules().isEmpty()) {
 					return;
 				}
 
-				Comment machineComment = new Comment(machine.getLabel());
-				rules.add(machineComment);
+				// If we're reordering, each rule's labelled with its own machine instead
+				if (!ordered) {
+					Comment machineComment = new Comment(machine.getLabel());
+					rules.add(machineComment);
+				}
 
-				machine.getFirewallRules().forEach(rule -> {
+				TrafficRuleNormaliser.normalise(machine.getFirewallRules()).forEach(rule -> {
 					try {
-						rules.add(new ShorewallRule(rule));
+						final ShorewallRule shorewallRule = new ShorewallRule(rule, resolver);
+
+						if (ordered) {
+							shorewallRule.setComment(machine.getLabel());
+							shorewallRule.setWeight(machine.getRuleWeight()
+									+ ((counters == null) ? 0 : shorewallRule.countHits(counters)));
+						}
+
+						rules.add(shorewallRule);
 					} catch (InvalidMachineModelException e) {
 						// TODO Auto-generated catch block
 						e.printStackTrace();
 					}
 				});
 			});
+
+			if (ordered) {
+				return orderRules(rules);
+			}
 		}
 		else {
 			;; //TODO
@@ -589,6 +928,79 @@ public class ShorewallFirewall extends AFirewallProfile {
 		return rules;
 	}
 
+	/**
+	 * Read in our live firewall's counters, if we've been given them
+	 *
+	 * @return the counters, or null if there aren't any
+	 * @throws InvalidProfileException if we've been given counters, but can't
+	 * 			read them
+	 */
+	private IptablesCounters getCounters() throws InvalidProfileException {
+		if (getNetworkModel().getFirewallCounters().isEmpty()) {
+			return null;
+		}
+
+		final Path counters = getNetworkModel().getFirewallCounters().get();
+		try {
+			return IptablesCounters.read(counters);
+		} catch (IOException e) {
+			throw new InvalidProfileException("Unable to read the firewall counters at " + counters
+					+ ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Order our rules so that the ones we expect to be hit most often come
+	 * first, meaning most packets have fewer rules to get through.
+	 *
+	 * A rule is only ever moved ahead of another if they can be swapped
+	 * without changing what our firewall lets through, and we then check
+	 * that's the case for every pair of rules before using the new order.
+	 *
+	 * @param rules our rules, in the order they were built
+	 * @return our rules, in the order they should be written out
+	 * @throws InvalidFirewallRuleException if the new order would change what
+	 * 		our firewall lets through
+	 */
+	private List<ShorewallRule> orderRules(List<ShorewallRule> rules) throws InvalidFirewallRuleException {
+		final List<ShorewallRule> ordered = new ArrayList<>(rules.size());
+
+		for (ShorewallRule rule : rules) {
+			int position = ordered.size();
+
+			while (position > 0
+					&& ordered.get(position - 1).getWeight() < rule.getWeight()
+					&& ordered.get(position - 1).commutesWith(rule)
+					&& rule.commutesWith(ordered.get(position - 1))) {
+				position--;
+			}
+
+			ordered.add(position, rule);
+		}
+
+		// Now prove it: any two rules which can't be swapped must still be in
+		// the same order as they were built
+		final Map<ShorewallRule, Integer> positions = new IdentityHashMap<>();
+		for (int i = 0; i < ordered.size(); i++) {
+			positions.put(ordered.get(i), i);
+		}
+
+		for (int i = 0; i < rules.size(); i++) {
+			for (int j = i + 1; j < rules.size(); j++) {
+				final ShorewallRule earlier = rules.get(i);
+				final ShorewallRule later = rules.get(j);
+
+				if (positions.get(earlier) > positions.get(later)
+						&& !(earlier.commutesWith(later) && later.commutesWith(earlier))) {
+					throw new InvalidFirewallRuleException("Reordering our firewall rules would have changed its behaviour ("
+							+ earlier.getRule() + " / " + later.getRule() + ")");
+				}
+			}
+		}
+
+		return ordered;
+	}
+
 	/**
 	 * Build our shorewall zones file.
 	 *
@@ -645,28 +1057,40 @@ public class ShorewallFirewall extends AFirewallProfile {
 
 		units.add(getZonesFile());
 
+		units.addAll(getIPSets());
+
 		// Now assign machines their (sub)zone, and enforce our maclist
 		final FileUnit hosts = new FileUnit("shorewall_hosts", "shorewall_interfaces", CONFIG_BASEDIR + "/hosts");
 		hosts.appendLine(getHostsFile().toArray(String[]::new));
 
 		units.add(hosts);
 
+		// Our maclist is enforced via ipsets in our blrules, rather than here
 		final FileUnit maclist = new FileUnit("shorewall_maclist", "shorewall_hosts", CONFIG_BASEDIR + "/maclist");
-		maclist.appendLine(getMaclistFile().toArray(String[]::new));
+		maclist.appendLine("#Please see " + CONFIG_BASEDIR + "/blrules and " + CONFIG_IPSETS);
 
 		units.add(maclist);
 
+		final FileUnit blrules = new FileUnit("shorewall_blrules", "shorewall_ipsets_loaded", CONFIG_BASEDIR + "/blrules");
+		blrules.appendLine(getBlRulesFile().toArray(String[]::new));
+
+		units.add(blrules);
+
 		//Masquerade any internal traffic
 		units.add(getMasqFile());
 
 		// Finally, build our FW rules...
 		final FileUnit rules = new FileUnit("shorewall_rules", "shorewall_hosts", CONFIG_BASEDIR + "/rules");
 		try {
-			rules.appendLine("ACCEPT\t\\$FW\t\\$FW"); //Talk to myself, please
+			final StringBuilder text = new StringBuilder();
+			text.append("ACCEPT\t\\$FW\t\\$FW\n"); //Talk to myself, please
 
-			getRulesFile().forEach(rule -> {
-				rules.appendLine(rule.getRule());
-			});
+			for (ShorewallRule rule : getRulesFile()) {
+				rule.appendRule(text);
+				text.append("\n");
+			}
+
+			rules.appendText(text.toString());
 		}
 		catch (InvalidServerException | InvalidServerModelException e) {
 			// TODO Auto-generated catch block
@@ -835,44 +1259,94 @@ public class ShorewallFirewall extends AFirewallProfile {
 			.forEach(machine -> {
 				hosts.add(cleanZone(machine.getLabel())
 					+ "\t" + type.toString()
-					+ ":" + getAddresses(machine)
-					+ "\tmaclist");
+					+ ":" + getAddresses(machine));
 			});
 
 		return hosts;
 	} 
 
 	/**
-	 * Parses machines into shorewall maclist lines
+	 * Parses machines into ipset restore lines for their VLAN's sets
 	 *
-	 * @param type the machine type, only used for labelling
-	 * @param machines the machines to list in the maclist file
-	 * @return a Collection of Strings containing the maclist file lines
+	 * @param type the machine type
+	 * @param machines the machines in this VLAN
+	 * @return a Collection of Strings containing the ipset restore lines
 	 */
-	private Collection<String> machines2Maclist(MachineType type, Collection<AMachineModel> machines) {
-		final Collection<String> maclist = new ArrayList<>();
-
-		maclist.add("#" + type.toString());
-
-		machines.forEach(machine -> {
-			machine.getNetworkInterfaces().stream()
-				.filter(nic -> nic.getMac().isPresent())
-				.filter(nic -> nic.getAddresses().isPresent())
-				.forEach(nic -> {
-					String mac = nic.getMac().get().toNormalizedString();
-					String addresses = nic.getAddresses().get().stream()
-											.map(ip -> ip.withoutPrefixLength())
-											.map(Object::toString)
-											.collect(Collectors.joining(","));
-
-					maclist.add("ACCEPT"
-								+ "\t" + type.toString()
-								+ "\t" + mac
-								+ "\t" + addresses
-								+ "\t#" + machine.getLabel());
-				});
-		});
+	private Collection<String> machines2IPSets(MachineType type, Collection<AMachineModel> machines) {
+		final Collection<String> ips = new ArrayList<>();
+		final Collection<String> macs = new ArrayList<>();
+
+		machines.stream()
+			.filter(machine -> !machine.isType(MachineType.ROUTER))
+			.forEach(machine -> {
+				machine.getNetworkInterfaces().stream()
+					.filter(nic -> nic.getAddresses().isPresent())
+					.forEach(nic -> {
+						nic.getAddresses().get().stream()
+							.filter(IPAddress::isIPv4)
+							.map(ip -> ip.withoutPrefixLength().toCompressedString())
+							.forEach(ip -> {
+								ips.add(ip);
+
+								nic.getMac().ifPresent(mac -> macs.add(ip + "," + mac.toColonDelimitedString()));
+							});
+					});
+			});
+
+		final Collection<String> ipsets = new ArrayList<>();
+		ipsets.addAll(buildIPSet(getIPSetName(type, "ip"), "hash:ip", ips));
+		ipsets.addAll(buildIPSet(getIPSetName(type, "mac"), "hash:ip,mac", macs));
+
+		return ipsets;
+	}
 
-		return maclist;
+	/**
+	 * Build an ipset, swapping it in atomically over whatever's there
+	 *
+	 * @param name the set's name
+	 * @param type the set's type
+	 * @param entries the set's entries
+	 * @return ipset restore lines
+	 */
+	private Collection<String> buildIPSet(String name, String type, Collection<String> entries) {
+		final Collection<String> ipset = new ArrayList<>();
+
+		ipset.add("create " + name + " " + type + " -exist");
+		ipset.add("create " + name + "_new " + type + " -exist");
+		ipset.add("flush " + name + "_new");
+		entries.forEach(entry -> ipset.add("add " + name + "_new " + entry + " -exist"));
+		ipset.add("swap " + name + "_new " + name);
+		ipset.add("destroy " + name + "_new");
+
+		return ipset;
+	}
+
+	/**
+	 * Our ipsets have to exist before Shorewall can start, and whenever they
+	 * change they need reloading (but Shorewall doesn't).
+	 *
+	 * @return units to write out and load our ipsets
+	 * @throws InvalidProfileException if you don't have exactly 1 router on your network
+	 */
+	private Collection<IUnit> getIPSets() throws InvalidProfileException {
+		final Collection<IUnit> units = new ArrayList<>();
+
+		final FileUnit ipsets = new FileUnit("shorewall_ipsets", "shorewall_interfaces", CONFIG_IPSETS);
+		ipsets.appendLine(getIPSetsFile().toArray(String[]::new));
+
+		units.add(ipsets);
+
+		units.add(new SimpleUnit("shorewall_ipsets_loaded", "shorewall_ipsets",
+				"sudo ipset restore < " + CONFIG_IPSETS + " && sudo touch " + IPSETS_LOADED,
+				"[ " + IPSETS_LOADED + " -nt " + CONFIG_IPSETS + " ] && echo pass || echo fail", "pass", "pass",
+				"I couldn't load your firewall's ipsets. This means your firewall will fail to start."));
+
+		// Make sure they're there when Shorewall starts at boot, too
+		final FileUnit init = new FileUnit("shorewall_init", "shorewall_ipsets", CONFIG_BASEDIR + "/init");
+		init.appendLine("ipset restore < " + CONFIG_IPSETS);
+
+		units.add(init);
+
+		return units;
 	}
 }
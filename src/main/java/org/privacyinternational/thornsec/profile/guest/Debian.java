@@ -309,6 +309,67 @@ public class Debian extends AOS {
 		return preseed;
 	}
 
+	/**
+	 * Build the preseed for a HyperVisor's Debian golden image.
+	 *
+	 * This is only a base install, shared by every Service cloned from it, so
+	 * has nothing Service-specific in it, and no way of logging in until a
+	 * clone is personalised by cloud-init on its first boot.
+	 *
+	 * @param mirror the package mirror to install from
+	 * @param mirrorDirectory the Debian directory on that mirror
+	 * @return the preseed's lines
+	 */
+	public static Collection<String> getGoldenPreseed(String mirror, String mirrorDirectory) {
+		final Collection<String> preseed = new ArrayList<>();
+
+		preseed.add("d-i debian-installer/locale string en_GB.UTF-8");
+		preseed.add("d-i keyboard-configuration/xkb-keymap select gb");
+		preseed.add("d-i netcfg/target_network_config select ifupdown");
+		preseed.add("d-i netcfg/choose_interface select auto");
+		preseed.add("d-i netcfg/get_hostname string golden");
+		preseed.add("d-i netcfg/get_domain string localdomain");
+		preseed.add("d-i mirror/country string manual");
+		preseed.add("d-i mirror/http/hostname string " + mirror);
+		preseed.add("d-i mirror/http/directory string " + mirrorDirectory);
+		preseed.add("d-i mirror/http/proxy string ");
+		// No passwords or users in the base - these are set per clone
+		preseed.add("d-i passwd/root-password-crypted password !");
+		preseed.add("d-i passwd/make-user boolean false");
+		preseed.add("d-i clock-setup/utc boolean true");
+		preseed.add("d-i time/zone string Europe/London");
+		preseed.add("d-i clock-setup/ntp boolean true");
+		preseed.add("d-i partman-auto/disk string /dev/sda");
+		preseed.add("d-i partman-auto/method string regular");
+		preseed.add("d-i partman-auto/choose_recipe select atomic");
+		preseed.add("d-i partman-partitioning/confirm_write_new_label boolean true");
+		preseed.add("d-i partman/choose_partition select finish");
+		preseed.add("d-i partman/confirm boolean true");
+		preseed.add("d-i partman/confirm_nooverwrite boolean true");
+		preseed.add("tasksel tasksel/first multiselect none");
+		preseed.add("d-i apt-setup/cdrom/set-first boolean false");
+		preseed.add("d-i apt-setup/cdrom/set-next boolean false");
+		preseed.add("d-i apt-setup/cdrom/set-failed boolean false");
+		// cloud-init personalises each clone on first boot, from its seed ISO
+		preseed.add("d-i pkgsel/include string sudo openssh-server dkms gcc bzip2 cloud-init");
+		preseed.add("openssh-server openssh-server/permit-root-login boolean false");
+		preseed.add("popularity-contest popularity-contest/participate boolean false");
+		// Strip anything which identifies this install, so each clone generates its own
+		preseed.add("d-i preseed/late_command string"
+				+ " echo 'datasource_list: [ NoCloud, None ]' > /target/etc/cloud/cloud.cfg.d/99_thornsec.cfg;"
+				+ " rm -f /target/etc/ssh/ssh_host_* /target/var/lib/dbus/machine-id;"
+				+ " : > /target/etc/machine-id;"
+				+ " if [ -d /target/var/lib/dbus ]; then ln -s /etc/machine-id /target/var/lib/dbus/machine-id; fi;");
+		preseed.add("d-i grub-installer/only_debian boolean true");
+		preseed.add("d-i grub-installer/with_other_os boolean false");
+		preseed.add("d-i grub-installer/bootdev string default");
+		preseed.add("d-i finish-install/reboot_in_progress note");
+		// Power off rather than reboot, so our HyperVisor knows we're installed
+		preseed.add("d-i debian-installer/exit/poweroff boolean true");
+
+		return preseed;
+	}
+
 	/**
 	 * @param user
 	 * @param sshDir
@@ -8,6 +8,10 @@
 package org.privacyinternational.thornsec.profile.hypervisor;
 
 import java.util.Collection;
+import org.privacyinternational.thornsec.core.data.machine.ServerData.GuestOS;
+import org.privacyinternational.thornsec.core.exception.data.NoValidUsersException;
+import org.privacyinternational.thornsec.core.exception.data.machine.InvalidUserException;
+import org.privacyinternational.thornsec.core.exception.runtime.InvalidGuestOSException;
 import org.privacyinternational.thornsec.core.exception.runtime.InvalidMachineModelException;
 import org.privacyinternational.thornsec.core.iface.IUnit;
 import org.privacyinternational.thornsec.core.model.machine.HypervisorModel;
@@ -24,7 +28,7 @@ public abstract class AHypervisorProfile extends AStructuredProfile {
 
 	protected abstract void buildBackups();
 
-	protected abstract void buildVMs() throws InvalidMachineModelException;
+	protected abstract void buildVMs() throws InvalidMachineModelException, NoValidUsersException, InvalidUserException;
 
 	/**
 	 * Return this machine as a HypervisorModel 
@@ -34,5 +38,16 @@ public abstract class AHypervisorProfile extends AStructuredProfile {
 		return (HypervisorModel) getMachineModel();
 	}
 
-	public abstract Collection<IUnit> buildVM(ServiceModel service);
+	public abstract Collection<IUnit> buildVM(ServiceModel service) throws NoValidUsersException, InvalidUserException;
+
+	/**
+	 * Build the golden image for a given OS, which our Services' boot disks
+	 * are then cloned from
+	 *
+	 * @param os the guest OS
+	 * @return units to install & snapshot the golden image
+	 * @throws InvalidGuestOSException if we can't work out where to install
+	 * 			the OS from
+	 */
+	public abstract Collection<IUnit> buildGoldenImage(GuestOS os) throws InvalidGuestOSException;
 }
@@ -11,28 +11,39 @@ import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map;
 import org.privacyinternational.thornsec.core.exception.AThornSecException;
 import org.privacyinternational.thornsec.core.exception.data.InvalidPortException;
 import org.privacyinternational.thornsec.core.exception.data.NoValidUsersException;
 import org.privacyinternational.thornsec.core.exception.data.machine.InvalidServerException;
+import org.privacyinternational.thornsec.core.exception.data.machine.InvalidUserException;
+import org.privacyinternational.thornsec.core.exec.network.OpenKeePassPassphrase;
+import org.privacyinternational.thornsec.core.exception.runtime.InvalidGuestOSException;
 import org.privacyinternational.thornsec.core.exception.runtime.InvalidMachineModelException;
 import org.privacyinternational.thornsec.core.exception.runtime.InvalidServerModelException;
 import org.privacyinternational.thornsec.core.iface.IUnit;
 import org.privacyinternational.thornsec.core.model.machine.HypervisorModel;
 import org.privacyinternational.thornsec.core.model.machine.ServiceModel;
-import org.privacyinternational.thornsec.core.model.machine.configuration.disks.ADiskModel;
-import org.privacyinternational.thornsec.core.data.machine.configuration.DiskData.Medium;
+import org.privacyinternational.thornsec.core.model.machine.configuration.disks.DVDModel;
+import org.privacyinternational.thornsec.core.model.machine.configuration.disks.HardDiskModel;
+import org.privacyinternational.thornsec.core.model.network.UserModel;
+import org.privacyinternational.thornsec.core.data.machine.ServerData.GuestOS;
+import org.privacyinternational.thornsec.core.data.machine.configuration.DiskData.Format;
 import org.privacyinternational.thornsec.core.unit.SimpleUnit;
 import org.privacyinternational.thornsec.core.unit.fs.DirUnit;
 import org.privacyinternational.thornsec.core.unit.fs.FileUnit;
 import org.privacyinternational.thornsec.core.unit.pkg.InstalledUnit;
+import org.privacyinternational.thornsec.core.unit.vm.VMSettingsUnit;
+import org.privacyinternational.thornsec.core.unit.vm.VMSnapshotUnit;
+import org.privacyinternational.thornsec.profile.guest.Debian;
 import inet.ipaddr.HostName;
 
 public class Virtualbox extends AHypervisorProfile {
 	final static String USER_PREFIX = "vboxuser_";
 	final static String GROUP = "vboxusers";
 
+	// How long, in seconds, to give a golden image's OS to install
+	final static Integer GOLDEN_INSTALL_TIMEOUT = 3600;
+
 	public Virtualbox(HypervisorModel me) {
 		super(me);
 	}
@@ -47,7 +58,7 @@ public class Virtualbox extends AHypervisorProfile {
 	}
 
 	@Override
-	protected void buildVMs() throws InvalidMachineModelException {
+	protected void buildVMs() throws InvalidMachineModelException, NoValidUsersException, InvalidUserException {
 		for (ServiceModel service : getServerModel().getServices()) {
 			buildVM(service);
 		}
@@ -81,6 +92,145 @@ public class Virtualbox extends AHypervisorProfile {
 						+ " on its HyperVisor.  This is fatal, " + service.getLabel() + " will not exist on your network.");
 	}
 
+	/**
+	 * @return the name of the template VM a given OS's golden image is
+	 * 			installed in
+	 */
+	public static String getGoldenVM(GuestOS os) {
+		return "golden_" + os.name().toLowerCase();
+	}
+
+	/**
+	 * @return the label of the unit which snapshots a given OS's golden image,
+	 * 			once it's been installed
+	 */
+	public static String getGoldenImageLabel(GuestOS os) {
+		return getGoldenVM(os) + "_snapshot";
+	}
+
+	private static String getOSType(GuestOS os) {
+		switch (os) {
+			case DEBIAN_64:
+				return "Debian_64";
+			case DEBIAN_32:
+				return "Debian";
+			case ALPINE_64:
+				return "Linux26_64";
+			default:
+				return "Linux26";
+		}
+	}
+
+	/**
+	 * Rather than every Service installing its OS from scratch, we install
+	 * each OS once into a template VM, and snapshot it. The base VDI is then
+	 * read-only, and each Service's boot disk is created as a differencing
+	 * child of it, so only holds what's changed since install.
+	 */
+	@Override
+	public Collection<IUnit> buildGoldenImage(GuestOS os) throws InvalidGuestOSException {
+		final Collection<IUnit> units = new ArrayList<>();
+
+		final String vm = getGoldenVM(os);
+		final String user = USER_PREFIX + vm;
+		final String image = getServerModel().getGoldenImage(os).getAbsolutePath();
+		final String imageDir = getServerModel().getGoldenImage(os).getParent();
+		final String iso = getServerModel().getGoldenInstallIso(os).getAbsolutePath();
+		final String isoDir = getServerModel().getGoldenInstallIso(os).getParent();
+		final String preseed = getServerModel().getGoldenPreseed(os).getAbsolutePath();
+		final String waited = vm + "_waited";
+
+		units.add(new SimpleUnit(vm + "_user", "virtualbox_installed",
+				"sudo adduser " + user
+					+ " --system" //create with no aging information in /etc/shadow
+					+ " --shell=/bin/false" //force no login shell
+					+ " --disabled-login" //deactivate ability to log in as account
+					+ " --ingroup " + GROUP,
+				"id -u " + user + " 2>&1 | grep 'no such user'", "", "pass",
+				"Couldn't create the user for the " + os + " golden image."));
+
+		units.add(new DirUnit(vm + "_dir", vm + "_user", imageDir, user, GROUP, 0750,
+				"Couldn't create the directory for the " + os + " golden image."));
+
+		units.add(new DirUnit(vm + "_iso_dir", vm + "_dir_created", isoDir, user, GROUP, 0750,
+				"Couldn't create the directory for the " + os + " golden image's install ISO."));
+
+		String isoMessage = "There's no install ISO for the " + os + " golden image.  Please put a preseeded install ISO,"
+				+ " which powers the machine off once it's done, at " + iso + ", otherwise none of your " + os
+				+ " services can be built.";
+
+		// We don't remaster install ISOs ourselves (yet), but we can at least
+		// write out the preseed one should be built with
+		if (os == GuestOS.DEBIAN_64 || os == GuestOS.DEBIAN_32) {
+			final FileUnit preseedFile = new FileUnit(vm + "_preseed", vm + "_iso_dir_created", preseed,
+					user, GROUP, 0640, "Couldn't write out the preseed for the " + os + " golden image.");
+			preseedFile.appendLine(Debian.getGoldenPreseed(getServerModel().getPackageMirror(),
+					getServerModel().getPackageDirectory()).toArray(String[]::new));
+
+			units.add(preseedFile);
+
+			isoMessage = "There's no install ISO for the " + os + " golden image.  Please build one with the preseed at "
+					+ preseed + ", and put it at " + iso + ", otherwise none of your " + os + " services can be built.";
+		}
+
+		units.add(new SimpleUnit(vm + "_install_iso", vm + "_iso_dir_created",
+				"", //No config to do here
+				"sudo [ -f " + iso + " ] && echo pass || echo fail;", "pass", "pass",
+				isoMessage));
+
+		units.add(new SimpleUnit(vm + "_exists", vm + "_install_iso",
+				"sudo -u " + user + " VBoxManage createvm --name " + vm + " --ostype \"" + getOSType(os) + "\" --register;"
+						+ "sudo -u " + user + " VBoxManage modifyvm " + vm
+							+ " --description \"ThornSec " + os + " golden image\""
+							+ " --memory 1024 --ioapic on --audio none --boot1 dvd --boot2 disk;"
+						+ "sudo -u " + user + " VBoxManage storagectl " + vm
+							+ " --name \"HDDs\" --add sas --controller LSILogicSAS --portcount 1 --hostiocache off;"
+						+ "sudo -u " + user + " VBoxManage storagectl " + vm
+							+ " --name \"DVDs\" --add ide --controller PIIX4 --hostiocache off;"
+						+ "sudo -u " + user + " VBoxManage createmedium disk --filename " + image
+							+ " --size " + ServiceModel.DEFAULT_BOOT_DISK_SIZE + " --format " + Format.VDI + ";"
+						+ "sudo -u " + user + " VBoxManage storageattach " + vm
+							+ " --storagectl \"HDDs\" --port 0 --device 0 --type hdd --medium " + image + ";"
+						+ "sudo -u " + user + " VBoxManage storageattach " + vm
+							+ " --storagectl \"DVDs\" --port 0 --device 0 --type dvddrive --medium " + iso,
+				"sudo -u " + user + " VBoxManage list vms | grep '\"" + vm + "\"'", "", "fail",
+				"Couldn't create the template VM for the " + os + " golden image."));
+
+		// The installer powers the VM off once it's done, at which point we
+		// snapshot it, which makes the base VDI read-only. The base is then
+		// opened (read-only) by each Service's boot disk, so needs to be
+		// readable by everyone in the group.
+		// If the install hasn't finished in time, we pull the plug, and leave
+		// it unsnapshotted, so this unit fails
+		final String isRunning = "sudo -u " + user + " VBoxManage showvminfo " + vm + " --machinereadable"
+				+ " | grep -qE '^VMState=\"(starting|running|paused|stopping)\"'";
+		units.add(new SimpleUnit(getGoldenImageLabel(os), vm + "_exists",
+				"sudo -u " + user + " VBoxManage startvm " + vm + " --type headless;"
+						+ waited + "=0;"
+						+ "while " + isRunning + " && [ ${" + waited + "} -lt " + GOLDEN_INSTALL_TIMEOUT + " ]; do"
+							+ " sleep 30; " + waited + "=$((" + waited + " + 30));"
+						+ " done;"
+						+ "if " + isRunning + "; then"
+							+ " sudo -u " + user + " VBoxManage controlvm " + vm + " poweroff;"
+							+ " echo \"The " + os + " golden image didn't install within " + GOLDEN_INSTALL_TIMEOUT + " seconds\";"
+						+ " else"
+							+ " sudo -u " + user + " VBoxManage storageattach " + vm
+								+ " --storagectl \"DVDs\" --port 0 --device 0 --type dvddrive --medium emptydrive;"
+							+ " sudo -u " + user + " VBoxManage snapshot " + vm + " take base"
+								+ " --description \"Installed $(date)\";"
+							+ " sudo chgrp " + GROUP + " " + image + ";"
+							+ " sudo chmod 0640 " + image + ";"
+						+ " fi",
+				"sudo -u " + user + " VBoxManage snapshot " + vm + " list --machinereadable 2>/dev/null"
+						+ " | grep -q '^SnapshotName=\"base\"' && echo pass || echo fail",
+				"pass", "pass",
+				"Couldn't install the " + os + " golden image.  None of your " + os + " services can be built."));
+
+		getServerModel().getUserModel().addUsername(user);
+
+		return units;
+	}
+
 	private final Collection<IUnit> createSockets(ServiceModel service) {
 		final Collection<IUnit> units = new ArrayList<>();
 		final String ttySocketDir = getServerModel().getVMBase().getPath() + "/sockets/" + service.getLabel();
@@ -88,32 +238,34 @@ public class Virtualbox extends AHypervisorProfile {
 		units.add(new DirUnit("socket_dir_" + service.getLabel(), "proceed", ttySocketDir, USER_PREFIX + service.getLabel(), GROUP, 0750, ""));
 		// tty0 socket
 		units.add(new SimpleUnit(service.getLabel() + "_tty0_com_port", service.getLabel() + "_exists",
-				"sudo -u " + USER_PREFIX + service.getLabel() + " VBoxManage modifyvm " + service.getLabel() + " --uart1 0x3F8 4",
-				"sudo -u " + USER_PREFIX + service.getLabel() + " VBoxManage showvminfo " + service.getLabel() + " --machinereadable | grep ^uart1=",
-				"uart1=\\\"0x03f8,4\\\"", "pass"));
+				"sudo -u " + USER_PREFIX + service.getLabel() + " VBoxManage modifyvm " + service.getLabel() + " --uart1 0x3F8 4;"
+						+ VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.get(service.getLabel(), "uart1"),
+				"0x03f8,4", "pass"));
 
 		units.add(new SimpleUnit(service.getLabel() + "_tty0_socket", service.getLabel() + "_tty0_com_port",
 				"sudo -u " + USER_PREFIX + service.getLabel() + " VBoxManage modifyvm " + service.getLabel() + " --uartmode1 server " + ttySocketDir
-						+ "/vboxttyS0",
-				"sudo -u " + USER_PREFIX + service.getLabel() + " VBoxManage showvminfo " + service.getLabel() + " --machinereadable | grep ^uartmode1=",
-				"uartmode1=\\\"server," + ttySocketDir + "/vboxttyS0\\\"", "pass"));
+						+ "/vboxttyS0;" + VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.get(service.getLabel(), "uartmode1"),
+				"server," + ttySocketDir + "/vboxttyS0", "pass"));
 
 		units.add(new SimpleUnit(service.getLabel() + "_tty1_com_port", service.getLabel() + "_exists",
-				"sudo -u " + USER_PREFIX + service.getLabel() + " VBoxManage modifyvm " + service.getLabel() + " --uart2 0x2F8 3",
-				"sudo -u " + USER_PREFIX + service.getLabel() + " VBoxManage showvminfo " + service.getLabel() + " --machinereadable | grep ^uart2=",
-				"uart2=\\\"0x02f8,3\\\"", "pass"));
+				"sudo -u " + USER_PREFIX + service.getLabel() + " VBoxManage modifyvm " + service.getLabel() + " --uart2 0x2F8 3;"
+						+ VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.get(service.getLabel(), "uart2"),
+				"0x02f8,3", "pass"));
 
 		units.add(new SimpleUnit(service.getLabel() + "_tty1_socket", service.getLabel() + "_tty1_com_port",
 				"sudo -u " + USER_PREFIX + service.getLabel() + " VBoxManage modifyvm " + service.getLabel() + " --uartmode2 server " + ttySocketDir
-						+ "/vboxttyS1",
-				"sudo -u " + USER_PREFIX + service.getLabel() + " VBoxManage showvminfo " + service.getLabel() + " --machinereadable | grep ^uartmode2=",
-				"uartmode2=\\\"server," + ttySocketDir + "/vboxttyS1\\\"", "pass"));
+						+ "/vboxttyS1;" + VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.get(service.getLabel(), "uartmode2"),
+				"server," + ttySocketDir + "/vboxttyS1", "pass"));
 
 		return units;
 	}
 
 	@Override
-	public Collection<IUnit> buildVM(ServiceModel service) {
+	public Collection<IUnit> buildVM(ServiceModel service) throws NoValidUsersException, InvalidUserException {
 		final String baseDir = getServerModel().getVMBase().getAbsolutePath();
 
 		final String backupDir = baseDir + "/backups/" + service.getLabel();
@@ -123,37 +275,44 @@ public class Virtualbox extends AHypervisorProfile {
 
 		units.add(createVMUser(service));
 		units.add(createVM(service));
+		// Read the VM's settings in once, rather than once per setting we check
+		units.add(new VMSnapshotUnit(service.getLabel(), USER_PREFIX + service.getLabel(), service.getLabel() + "_exists"));
 		units.addAll(createSockets(service));
+		units.addAll(buildDisks(service));
 
-		// Architecture setup
-		units.add(modifyVm(service.getLabel(), USER_PREFIX + service.getLabel(), "paravirtprovider", "kvm")); // Default, make it explicit
-		units.add(modifyVm(service.getLabel(), USER_PREFIX + service.getLabel(), "chipset", "ich9"));
-		units.add(modifyVm(service.getLabel(), USER_PREFIX + service.getLabel(), "ioapic", "on", "IO APIC couldn't be enabled for " + service.getLabel()
-				+ ".  This is required for 64-bit installations, and for more than 1 virtual CPU in a service."));
-		units.add(modifyVm(service.getLabel(), USER_PREFIX + service.getLabel(), "hwvirtex", "on"));
-		units.add(modifyVm(service.getLabel(), USER_PREFIX + service.getLabel(), "pae", "on"));
-		units.add(modifyVm(service.getLabel(), USER_PREFIX + service.getLabel(), "cpus", service.getCPUs()));
-		units.add(modifyVm(service.getLabel(), USER_PREFIX + service.getLabel(), "cpuexecutioncap", service.getCPUExecutionCap()));
-
-		// RAM setup
-		units.add(modifyVm(service.getLabel(), USER_PREFIX + service.getLabel(), "memory", service.getRAM()));
-		units.add(modifyVm(service.getLabel(), USER_PREFIX + service.getLabel(), "vram", "16"));
-		units.add(modifyVm(service.getLabel(), USER_PREFIX + service.getLabel(), "nestedpaging", "on"));
-		units.add(modifyVm(service.getLabel(), USER_PREFIX + service.getLabel(), "largepages", "on"));
-
-		// Audio setup (switch it off)
-		units.add(modifyVm(service.getLabel(), USER_PREFIX + service.getLabel(), "audio", "none"));
+		// A golden clone is a copy of a shared base install, so has to be
+		// made into this service when it first boots
+		if (getServerModel().useGoldenImages()) {
+			units.addAll(buildSeed(service));
+		}
 
-		// Use high precision event timers instead of legacy
-		units.add(modifyVm(service.getLabel(), USER_PREFIX + service.getLabel(), "hpet", "on"));
+		// Set up the VM's "hardware" in one go
+		units.add(new VMSettingsUnit(service.getLabel(), USER_PREFIX + service.getLabel(),
+				"Couldn't configure the virtual hardware for " + service.getLabel() + ".")
+				// Architecture setup
+				.set("paravirtprovider", "kvm") // Default, make it explicit
+				.set("chipset", "ich9")
+				.set("ioapic", "on") // Required for 64-bit, and for more than 1 virtual CPU
+				.set("hwvirtex", "on")
+				.set("pae", "on")
+				.set("cpus", service.getCPUs())
+				.set("cpuexecutioncap", service.getCPUExecutionCap())
+				// RAM setup
+				.set("memory", service.getRAM())
+				.set("vram", 16)
+				.set("nestedpaging", "on")
+				.set("largepages", "on")
+				// Audio setup (switch it off)
+				.set("audio", "none")
+				// Use high precision event timers instead of legacy
+				.set("hpet", "on"));
 
 		// Shared folders setup
 		units.add(new SimpleUnit(service.getLabel() + "_backup_sf_attached", service.getLabel() + "_exists",
 				"sudo -u " + USER_PREFIX + service.getLabel() + " VBoxManage sharedfolder add " + service.getLabel() + " --name backup --hostpath "
-						+ backupDir,
-				"sudo -u " + USER_PREFIX + service.getLabel() + " VBoxManage showvminfo " + service.getLabel()
-						+ " --machinereadable | grep SharedFolderPathMachineMapping2",
-				"SharedFolderPathMachineMapping2=\\\"" + backupDir + "\\\"", "pass"));
+						+ backupDir + ";" + VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.get(service.getLabel(), "SharedFolderPathMachineMapping2"),
+				backupDir, "pass"));
 
 		// Clock setup to try and stop drift between host and guest
 		// https://www.virtualbox.org/manual/ch09.html#changetimesync
@@ -200,6 +359,11 @@ public class Virtualbox extends AHypervisorProfile {
 		units.add(new InstalledUnit("metal_guestfs_utils", "proceed", "libguestfs-tools"));
 		units.add(new InstalledUnit("metal_wget", "proceed", "wget"));
 
+		// mkpasswd, to hash the passphrase in our golden clones' seeds
+		if (getServerModel().useGoldenImages()) {
+			units.add(new InstalledUnit("metal_whois", "proceed", "whois"));
+		}
+
 		return units;
 	}
 
@@ -227,109 +391,201 @@ public class Virtualbox extends AHypervisorProfile {
 		return units;
 	}
 
-	protected Collection<IUnit> buildDisks(String user, String group, String service, Map<String, ADiskModel> disks) {
+	protected Collection<IUnit> buildDisks(ServiceModel service) {
 		final Collection<IUnit> units = new ArrayList<>();
 
+		final String user = USER_PREFIX + service.getLabel();
+		final String label = service.getLabel();
+
+		final HardDiskModel[] hdds = service.getDisks().values().stream()
+				.filter(disk -> disk instanceof HardDiskModel)
+				.toArray(HardDiskModel[]::new);
+		final DVDModel[] dvds = service.getDisks().values().stream()
+				.filter(disk -> disk instanceof DVDModel)
+				.toArray(DVDModel[]::new);
+
 		// Disk controller setup
-		units.add(new SimpleUnit(service + "_hdds_sas_controller", service + "_exists",
-				"sudo -u " + user + " VBoxManage storagectl " + service + " --name \"HDDs\"" + " --add sas"
-						+ " --controller LSILogicSAS" + " --portcount "
-						+ disks.values().stream().filter(disk -> disk.getMedium() == Medium.DISK).count()
-						+ " --hostiocache off",
-				"sudo -u " + user + " VBoxManage showvminfo " + service
-						+ " --machinereadable | grep ^storagecontrollername0=",
-				"storagecontrollername0=\\\"HDDs\\\"", "pass",
-				"The hard drive SAS controller for " + service
-						+ " (where its disks are attached) Couldn't be created/attached to " + service
-						+ ".  This is fatal, " + service + " will not be installed."));
-
-		units.add(new SimpleUnit(service + "_dvds_ide_controller", service + "_exists", "sudo -u " + user
-				+ " VBoxManage storagectl " + service + " --name \"DVDs\"" + " --add ide" + " --controller PIIX4"
-				// + " --portcount " + disks.values().stream().filter(disk -> disk.getMedium()
-				// == Medium.DVD).count()
-				+ " --hostiocache off",
-				"sudo -u " + user + " VBoxManage showvminfo " + service
-						+ " --machinereadable | grep ^storagecontrollername1=",
-				"storagecontrollername1=\\\"DVDs\\\"", "pass",
-				"The DVD SAS controller for " + service
-						+ " (where its disks are attached) Couldn't be created/attached to " + service
-						+ ".  This is fatal, " + service + " will not be installed."));
+		units.add(new SimpleUnit(label + "_hdds_sas_controller", label + "_exists",
+				"sudo -u " + user + " VBoxManage storagectl " + label + " --name \"HDDs\"" + " --add sas"
+						+ " --controller LSILogicSAS" + " --portcount " + hdds.length
+						+ " --hostiocache off;" + VMSnapshotUnit.refresh(label),
+				VMSnapshotUnit.get(label, "storagecontrollername0"),
+				"HDDs", "pass",
+				"The hard drive SAS controller for " + label
+						+ " (where its disks are attached) Couldn't be created/attached to " + label
+						+ ".  This is fatal, " + label + " will not be installed."));
+
+		units.add(new SimpleUnit(label + "_dvds_ide_controller", label + "_exists", "sudo -u " + user
+				+ " VBoxManage storagectl " + label + " --name \"DVDs\"" + " --add ide" + " --controller PIIX4"
+				+ " --hostiocache off;" + VMSnapshotUnit.refresh(label),
+				VMSnapshotUnit.get(label, "storagecontrollername1"),
+				"DVDs", "pass",
+				"The DVD SAS controller for " + label
+						+ " (where its disks are attached) Couldn't be created/attached to " + label
+						+ ".  This is fatal, " + label + " will not be installed."));
 
 		int deviceCounter = 0;
-		for (final ADiskModel disk : disks.values().stream().filter(disk -> disk.getMedium() == Medium.DISK)
-				.toArray(ADiskModel[]::new)) {
-			units.add(new DirUnit(disk.getLabel() + "_disk_dir_" + service, "proceed", disk.getFilePath(), user, group, 0750, ""));
+		for (final HardDiskModel disk : hdds) {
+			// If we're cloning from a golden image, it has to be installed first
+			String precondition = "proceed";
+			if (disk.getDiffParent().isPresent()
+					&& disk.getDiffParent().get().equals(getServerModel().getGoldenImage(service.getOS()))) {
+				precondition = getGoldenImageLabel(service.getOS());
+			}
+
+			units.add(new DirUnit(disk.getLabel() + "_disk_dir_" + label, precondition, disk.getFilePath(), user, GROUP, 0750, ""));
 
-			units.add(new DirUnit(disk.getLabel() + "_disk_loopback_dir_" + service, "proceed",
+			units.add(new DirUnit(disk.getLabel() + "_disk_loopback_dir_" + label, "proceed",
 					disk.getFilePath() + "/live/", "root", "root", 0700, ""));
 
 			String diskCreation = "";
-			diskCreation += "sudo -u " + user + " VBoxManage createmedium --filename " + disk.getFilename();
-			diskCreation += " --size " + disk.getSize();
+			diskCreation += "sudo -u " + user + " VBoxManage createmedium disk --filename " + disk.getFilename();
 			diskCreation += " --format " + disk.getFormat();
-			diskCreation += (disk.getDiffParent().isPresent()) ? " --diffparent " + disk.getDiffParent() : "";
+			// A differencing disk is always the same size as its parent
+			diskCreation += (disk.getDiffParent().isPresent())
+					? " --diffparent " + disk.getDiffParent().get().getAbsolutePath()
+					: " --size " + disk.getSize();
 
-			units.add(new SimpleUnit(service + "_" + disk.getLabel() + "_disk",
-					disk.getLabel() + "_disk_dir_" + service + "_chmoded", diskCreation,
+			units.add(new SimpleUnit(label + "_" + disk.getLabel() + "_disk",
+					disk.getLabel() + "_disk_dir_" + label + "_created", diskCreation,
 					"sudo [ -f " + disk.getFilename() + " ] && echo pass;", "pass", "pass",
-					"Couldn't create the disk " + disk.getLabel() + " for " + service + "."));
-//			units.add(new FileOwnUnit(service + "_" + disk.getLabel() + "_disk",
-//					service + "_" + disk.getLabel() + "_disk", disk.getFilename(), user, group));
+					"Couldn't create the disk " + disk.getLabel() + " for " + label + "."));
 
 			String diskAttach = "";
-			diskAttach += "sudo -u " + user + " VBoxManage storageattach " + service;
+			diskAttach += "sudo -u " + user + " VBoxManage storageattach " + label;
 			diskAttach += " --storagectl \"HDDs\"";
 			diskAttach += " --port " + deviceCounter;
 			diskAttach += " --device 0";
 			diskAttach += " --type hdd";
 			diskAttach += " --medium " + disk.getFilename();
-			// diskAttach += (disk.getLabel().contentEquals("boot")) ? " --bootable on" : "
-			// --bootable -off";
-			// diskAttach += " --comment \\\"" + disk.getComment() + "\\\";";
 
-			units.add(new SimpleUnit(service + "_" + disk.getLabel() + "_disk_attached",
-					service + "_hdds_sas_controller", diskAttach,
-					"sudo -u " + user + " VBoxManage showvminfo " + service + " --machinereadable | grep \"HDDs-"
-							+ deviceCounter + "-0\"",
-					"\\\"HDDs-" + deviceCounter + "-0\\\"=\\\"" + disk.getFilename() + "\\\"", "pass",
-					"Couldn't attach disk " + disk.getLabel() + "for " + service + "."));
+			units.add(new SimpleUnit(label + "_" + disk.getLabel() + "_disk_attached",
+					label + "_" + disk.getLabel() + "_disk", diskAttach + ";" + VMSnapshotUnit.refresh(label),
+					VMSnapshotUnit.get(label, "HDDs-" + deviceCounter + "-0"),
+					disk.getFilename(), "pass",
+					"Couldn't attach disk " + disk.getLabel() + " for " + label + "."));
 
 			deviceCounter++;
 		}
 
 		deviceCounter = 0;
-		for (final ADiskModel disk : disks.values().stream().filter(disk -> disk.getMedium() == Medium.DVD)
-				.toArray(ADiskModel[]::new)) {
+		for (final DVDModel disk : dvds) {
 			String diskAttach = "";
-			diskAttach += "sudo -u " + user + " VBoxManage storageattach " + service;
+			diskAttach += "sudo -u " + user + " VBoxManage storageattach " + label;
 			diskAttach += " --storagectl \"DVDs\"";
 			diskAttach += " --port " + deviceCounter;
 			diskAttach += " --device 0";
 			diskAttach += " --type dvddrive";
 			diskAttach += " --medium " + disk.getFilename();
-			// diskAttach += (disk.getLabel().contentEquals("boot")) ? " --bootable on" : "
-			// --bootable -off";
-			// diskAttach += " --comment \\\"" + disk.getComment() + "\\\";";
 
-			units.add(new SimpleUnit(service + "_" + disk.getLabel() + "_disk_attached",
-					service + "_dvds_ide_controller", diskAttach,
-					"sudo -u " + user + " VBoxManage showvminfo " + service + " --machinereadable | grep \"DVDs-0-"
-							+ deviceCounter + "\"",
-					"\\\"DVDs-" + deviceCounter + "-0\\\"=\\\"" + disk.getFilename() + "\\\"", "pass",
-					"Couldn't attach disk " + disk.getLabel() + " for " + service + "."));
+			units.add(new SimpleUnit(label + "_" + disk.getLabel() + "_disk_attached",
+					label + "_dvds_ide_controller", diskAttach + ";" + VMSnapshotUnit.refresh(label),
+					VMSnapshotUnit.get(label, "DVDs-" + deviceCounter + "-0"),
+					disk.getFilename(), "pass",
+					"Couldn't attach disk " + disk.getLabel() + " for " + label + "."));
 
 			deviceCounter++;
 		}
 
 		// Boot setup - DVD is second to stop machines being wiped every time they're
 		// brought up
-		units.add(modifyVm(service, user, "boot1", "disk",
-				"Couldn't set the boot order for " + service + ".  This may mean the service will not be installed.",
-				service + "_hdds_sas_controller"));
-		units.add(modifyVm(service, user, "boot2", "dvd",
-				"Couldn't set the boot order for " + service + ".  This may mean the service will not be installed.",
-				service + "_dvds_ide_controller"));
-		
+		units.add(modifyVm(label, user, "boot1", "disk",
+				"Couldn't set the boot order for " + label + ".  This may mean the service will not be installed.",
+				label + "_hdds_sas_controller"));
+		units.add(modifyVm(label, user, "boot2", "dvd",
+				"Couldn't set the boot order for " + label + ".  This may mean the service will not be installed.",
+				label + "_dvds_ide_controller"));
+
+		return units;
+	}
+
+	/**
+	 * Build the cloud-init seed ISO which personalises a service's golden
+	 * clone on its first boot. This sets its hostname, creates our admin user
+	 * with their SSH key and (expired) passphrase, and has the clone generate
+	 * its own SSH host keys. The golden image's machine-id is emptied when
+	 * it's installed, so each clone generates its own of those, too.
+	 *
+	 * @param service the service being cloned
+	 * @return units to build & attach the service's seed ISO
+	 * @throws NoValidUsersException if there's no admin user to inject
+	 * @throws InvalidUserException if the admin user has no SSH public key
+	 */
+	private Collection<IUnit> buildSeed(ServiceModel service) throws NoValidUsersException, InvalidUserException {
+		final Collection<IUnit> units = new ArrayList<>();
+
+		final String user = USER_PREFIX + service.getLabel();
+		final String label = service.getLabel();
+		final String iso = getServerModel().getSeedIso(label).getAbsolutePath();
+		final String seedDir = getServerModel().getSeedIso(label).getParent();
+
+		final UserModel admin = getNetworkModel().getConfigUserModel();
+		final String pubKey = admin.getSSHPublicKey()
+				.orElseThrow(() -> new InvalidUserException(admin.getUsername() + " doesn't have an SSH public key"));
+
+		final OpenKeePassPassphrase pass = new OpenKeePassPassphrase(service);
+		String password = (pass.init()) ? pass.getPassphrase() : admin.getDefaultPassphrase().orElse("");
+		if (password == null || password.isEmpty()) {
+			password = label;
+		}
+
+		units.add(new DirUnit(label + "_seed_dir", label + "_exists", seedDir, user, GROUP, 0750,
+				"Couldn't create the directory for " + label + "'s first boot seed."));
+
+		final FileUnit metaData = new FileUnit(label + "_seed_meta_data", label + "_seed_dir_created",
+				seedDir + "/meta-data", user, GROUP, 0640,
+				"Couldn't write out " + label + "'s first boot meta-data.");
+		metaData.appendLine("instance-id: " + label);
+		metaData.appendLine("local-hostname: " + service.getHostName());
+		units.add(metaData);
+
+		// The passphrase is only hashed into this when the ISO is built, so it
+		// never sits in the file in the clear
+		final FileUnit userData = new FileUnit(label + "_seed_user_data", label + "_seed_meta_data",
+				seedDir + "/user-data.in", user, GROUP, 0640,
+				"Couldn't write out " + label + "'s first boot user-data.");
+		userData.appendLine("#cloud-config");
+		userData.appendLine("hostname: " + service.getHostName());
+		userData.appendLine("fqdn: " + service.getHostName() + "." + service.getDomain().getHost());
+		userData.appendLine("manage_etc_hosts: true");
+		userData.appendLine("ssh_deletekeys: true");
+		userData.appendLine("ssh_genkeytypes: [ rsa, ecdsa, ed25519 ]");
+		userData.appendLine("disable_root: true");
+		userData.appendLine("users:");
+		userData.appendLine("  - name: " + admin.getUsername());
+		userData.appendLine("    gecos: '" + admin.getFullName().replace("'", "''") + "'");
+		userData.appendLine("    homedir: " + admin.getHomeDirectory());
+		userData.appendLine("    groups: sudo");
+		userData.appendLine("    shell: /bin/bash");
+		userData.appendLine("    lock_passwd: false");
+		userData.appendLine("    passwd: '@PASSWORD@'");
+		userData.appendLine("    ssh_authorized_keys:");
+		userData.appendLine("      - " + pubKey);
+		// Force them to change their passphrase on first login
+		userData.appendLine("runcmd:");
+		userData.appendLine("  - [ passwd, --expire, " + admin.getUsername() + " ]");
+		units.add(userData);
+
+		units.add(new SimpleUnit(label + "_seed_iso", label + "_seed_user_data",
+				"hash=$(printf '%s' '" + password.replace("'", "'\\''") + "' | mkpasswd -s -m sha-512)"
+						+ " && sed \"s|@PASSWORD@|${hash}|\" " + seedDir + "/user-data.in"
+						+ " | sudo -u " + user + " tee " + seedDir + "/user-data > /dev/null"
+						+ " && sudo -u " + user + " genisoimage -quiet -output " + iso
+						+ " -volid cidata -joliet -rock " + seedDir + "/user-data " + seedDir + "/meta-data;",
+				"sudo [ " + iso + " -nt " + seedDir + "/user-data.in ] && sudo [ " + iso + " -nt " + seedDir
+						+ "/meta-data ] && echo pass || echo fail;", "pass", "pass",
+				"Couldn't build " + label + "'s first boot seed.  It will boot as an unconfigured copy of its golden"
+						+ " image, which you won't be able to log in to."));
+
+		units.add(new SimpleUnit(label + "_seed_iso_attached", label + "_seed_iso",
+				"sudo -u " + user + " VBoxManage storageattach " + label
+						+ " --storagectl \"DVDs\" --port 1 --device 1 --type dvddrive --medium " + iso + ";"
+						+ VMSnapshotUnit.refresh(label),
+				VMSnapshotUnit.get(label, "DVDs-1-1"),
+				iso, "pass",
+				"Couldn't attach " + label + "'s first boot seed.  It will boot as an unconfigured copy of its golden"
+						+ " image, which you won't be able to log in to."));
+
 		return units;
 	}
 	
@@ -341,10 +597,10 @@ public class Virtualbox extends AHypervisorProfile {
 		units.add(new SimpleUnit(service + "_log_sf_attached", service + "_exists",
 				"sudo -u " + user + " VBoxManage sharedfolder add " + service + " --name log --hostpath " + logDir + ";"
 						+ "sudo -u " + user + " VBoxManage setextradata " + service
-						+ " VBoxInternal1/SharedFoldersEnableSymlinksCreate/log 1",
-				"sudo -u " + user + " VBoxManage showvminfo " + service
-						+ " --machinereadable | grep SharedFolderPathMachineMapping1",
-				"SharedFolderPathMachineMapping1=\\\"" + logDir + "\\\"", "pass",
+						+ " VBoxInternal1/SharedFoldersEnableSymlinksCreate/log 1;"
+						+ VMSnapshotUnit.refresh(service),
+				VMSnapshotUnit.get(service, "SharedFolderPathMachineMapping1"),
+				logDir, "pass",
 				"Couldn't attach the logs folder to " + service + ".  This means logs will only exist in the VM."));
 		
 		return units;
@@ -364,20 +620,11 @@ public class Virtualbox extends AHypervisorProfile {
 
 	protected SimpleUnit modifyVm(String service, String user, String setting, String value, String errorMsg,
 			String prerequisite) {
-
-		String check = "";
-
-		// Integers aren't quoted...
-		if (value.matches("-?(0|[1-9]\\d*)")) {
-			check = setting + "=" + value;
-		} else {
-			check = setting + "=\\\"" + value + "\\\"";
-		}
-
 		return new SimpleUnit(service + "_" + setting + "_" + value, prerequisite,
-				"sudo -u " + user + " VBoxManage modifyvm " + service + " --" + setting + " " + value,
-				"sudo -u " + user + " VBoxManage showvminfo " + service + " --machinereadable | grep ^" + setting + "=",
-				check, "pass", errorMsg);
+				"sudo -u " + user + " VBoxManage modifyvm " + service + " --" + setting + " " + value + ";"
+						+ VMSnapshotUnit.refresh(service),
+				VMSnapshotUnit.get(service, setting),
+				value, "pass", errorMsg);
 	}
 
 	protected SimpleUnit modifyVm(String service, String user, String setting, String value, String errorMsg) {
@@ -396,10 +643,10 @@ public class Virtualbox extends AHypervisorProfile {
 			String prerequisite) {
 		return new SimpleUnit(service + "_" + property.replaceAll("-", "_") + "_" + value, prerequisite,
 				"sudo -u " + user + " VBoxManage guestproperty set " + service
-						+ " \"/VirtualBox/GuestAdd/VBoxService/--" + property + "\" " + value,
-				"sudo -u " + user + " VBoxManage guestproperty enumerate " + service
-						+ " | grep \"Name: /VirtualBox/GuestAdd/VBoxService/--" + property + ", value: " + value + "\"",
-				"", "fail", errorMsg);
+						+ " \"/VirtualBox/GuestAdd/VBoxService/--" + property + "\" " + value + ";"
+						+ VMSnapshotUnit.refresh(service),
+				VMSnapshotUnit.getGuestProperty(service, "/VirtualBox/GuestAdd/VBoxService/--" + property),
+				value, "pass", errorMsg);
 	}
 
 	protected SimpleUnit guestPropertySet(String service, String user, String property, String value, String errorMsg) {
@@ -23,6 +23,8 @@ import org.privacyinternational.thornsec.core.model.machine.configuration.disks.
 import org.privacyinternational.thornsec.core.unit.SimpleUnit;
 import org.privacyinternational.thornsec.core.unit.fs.DirUnit;
 import org.privacyinternational.thornsec.core.unit.pkg.InstalledUnit;
+import org.privacyinternational.thornsec.core.unit.vm.VMSettingsUnit;
+import org.privacyinternational.thornsec.core.unit.vm.VMSnapshotUnit;
 import inet.ipaddr.HostName;
 
 public class Virtualbox extends Virtualisation {
@@ -118,11 +120,10 @@ public class Virtualbox extends Virtualisation {
 								+ " --add sas"
 								+ " --controller LSILogicSAS"
 								+ " --portcount " + hdds.size()
-								+ " --hostiocache off",
-				"sudo -u " + user
-						+ " VBoxManage showvminfo " + service.getLabel()
-							+ " --machinereadable | grep ^storagecontrollername0=",
-				"storagecontrollername0=\\\"HDDs\\\"", "pass",
+								+ " --hostiocache off;"
+						+ VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.get(service.getLabel(), "storagecontrollername0"),
+				"HDDs", "pass",
 				"The hard drive SAS controller for " + service.getLabel()
 					+ " (where its disks are attached) Couldn't be"
 					+ " created/attached to " + service.getLabel() + "."
@@ -134,10 +135,10 @@ public class Virtualbox extends Virtualisation {
 								+ " --name \"DVDs\""
 								+ " --add ide"
 								+ " --controller PIIX4"
-								+ " --hostiocache off",
-				"sudo -u " + user + " VBoxManage showvminfo " + service.getLabel()
-						+ " --machinereadable | grep ^storagecontrollername1=",
-				"storagecontrollername1=\\\"DVDs\\\"", "pass",
+								+ " --hostiocache off;"
+						+ VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.get(service.getLabel(), "storagecontrollername1"),
+				"DVDs", "pass",
 				"The DVD IDE controller for " + service.getLabel() + " (where its"
 						+ " installation/booting medium is attached) couldn't be"
 						+ " created/attached to " + service.getLabel() + "."
@@ -189,9 +190,10 @@ public class Virtualbox extends Virtualisation {
 								+ " --port" + deviceCounter
 								+ " --device 0"
 								+ " --type hdd"
-								+ " --medium " + FilenameUtils.normalize(disk.getFilename(), true),
-						"sudo -u " + user + " VBoxManage showvminfo " + service.getLabel() + " --machinereadable | grep \"HDDs-" + deviceCounter + "-0\"",
-						"\\\"HDDs-" + deviceCounter + "-0\\\"=\\\"" + FilenameUtils.normalize(disk.getFilename(), true) + "\\\"",
+								+ " --medium " + FilenameUtils.normalize(disk.getFilename(), true) + ";"
+						+ VMSnapshotUnit.refresh(service.getLabel()),
+						VMSnapshotUnit.get(service.getLabel(), "HDDs-" + deviceCounter + "-0"),
+						FilenameUtils.normalize(disk.getFilename(), true),
 						"pass",
 						"Couldn't attach disk " + disk.getLabel() + "for " + service + "."
 					)
@@ -211,9 +213,10 @@ public class Virtualbox extends Virtualisation {
 								+ " --port" + deviceCounter
 								+ " --device 0"
 								+ " --type dvddrive"
-								+ " --medium " + FilenameUtils.normalize(disk.getFilename(), true),
-						"sudo -u " + user + " VBoxManage showvminfo " + service.getLabel() + " --machinereadable | grep \"DVDs-0-" + deviceCounter + "\"",
-						"\\\"DVDs-0-" + deviceCounter + "\\\"=\\\"" + FilenameUtils.normalize(disk.getFilename(), true) + "\\\"",
+								+ " --medium " + FilenameUtils.normalize(disk.getFilename(), true) + ";"
+						+ VMSnapshotUnit.refresh(service.getLabel()),
+						VMSnapshotUnit.get(service.getLabel(), "DVDs-" + deviceCounter + "-0"),
+						FilenameUtils.normalize(disk.getFilename(), true),
 						"pass",
 						"Couldn't attach disk " + disk.getLabel() + "for " + service + "."
 					)
@@ -245,10 +248,10 @@ public class Virtualbox extends Virtualisation {
 				"sudo -u " + getServiceUser(service)
 					+ " VBoxManage sharedfolder add " + service.getLabel()
 						+ " --name backups"
-						+ " --hostpath " + path,
-				"sudo -u " + getServiceUser(service)+ " VBoxManage showvminfo " + service
-						+ " --machinereadable | grep SharedFolderPathMachineMapping2",
-				"SharedFolderPathMachineMapping1=\\\"" + path + "\\\"", "pass",
+						+ " --hostpath " + path + ";"
+				+ VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.get(service.getLabel(), "SharedFolderPathMachineMapping2"),
+				path, "pass",
 				"Couldn't attach the backups folder to " + service + "."
 					+ " This means backups will not be accessible from the VM."));
 
@@ -278,11 +281,10 @@ public class Virtualbox extends Virtualisation {
 						+ " --hostpath " + path + ";"
 				+ "sudo -u " + getServiceUser(service)
 					+ " VBoxManage setextradata " + service
-						+ " VBoxInternal1/SharedFoldersEnableSymlinksCreate/logs 1",
-				"sudo -u " + getServiceUser(service)
-					+ " VBoxManage showvminfo " + service + " --machinereadable"
-				+ " | grep SharedFolderPathMachineMapping1",
-				"SharedFolderPathMachineMapping1=\\\"" + path + "\\\"", "pass",
+						+ " VBoxInternal1/SharedFoldersEnableSymlinksCreate/logs 1;"
+				+ VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.get(service.getLabel(), "SharedFolderPathMachineMapping1"),
+				path, "pass",
 				"Couldn't attach the logs folder to " + service + "."
 					+ " This means logs will only exist in the VM."));
 
@@ -318,6 +320,9 @@ public class Virtualbox extends Virtualisation {
 						+ " This is fatal, " + service + " will not exist on your network.")
 		);
 
+		// Read the VM's settings in once, rather than once per setting we check
+		units.add(new VMSnapshotUnit(service.getLabel(), user, service + "_exists"));
+
 		// Set up VM's storage
 		units.addAll(buildDisks(service));
 		//Make sure Logs are attached
@@ -327,29 +332,26 @@ public class Virtualbox extends Virtualisation {
 
 		units.add(new DirUnit("socket_dir_" + service, "proceed", ttySocketDir));
 
-		// Architecture setup
-		units.add(modifyVm(service, "paravirtprovider", "kvm")); // Default, make it explicit
-		units.add(modifyVm(service, "chipset", "ich9"));
-		units.add(modifyVm(service, "ioapic", "on",
-				"IO APIC couldn't be enabled for " + service + "."
-				+ " This is required for 64-bit installations, and for more than"
-				+ " 1 virtual CPU in a service."));
-		units.add(modifyVm(service, "hwvirtex", "on"));
-		units.add(modifyVm(service, "pae", "on"));
-		units.add(modifyVm(service, "cpus", service.getCPUs()));
-		units.add(modifyVm(service, "cpuexecutioncap", service.getCPUExecutionCap()));
-
-		// RAM setup
-		units.add(modifyVm(service, "memory", service.getRAM()));
-		units.add(modifyVm(service, "vram", 16));
-		units.add(modifyVm(service, "nestedpaging", "on"));
-		units.add(modifyVm(service, "largepages", "on"));
-
-		// Audio setup (switch it off)
-		units.add(modifyVm(service, user, "audio", "none"));
-
-		// Use high precision event timers instead of legacy
-		units.add(modifyVm(service, user, "hpet", "on"));
+		// Set up the VM's "hardware" in one go
+		units.add(new VMSettingsUnit(service.getLabel(), user,
+				"Couldn't configure the virtual hardware for " + service.getLabel() + ".")
+				// Architecture setup
+				.set("paravirtprovider", "kvm") // Default, make it explicit
+				.set("chipset", "ich9")
+				.set("ioapic", "on") // Required for 64-bit, and for more than 1 virtual CPU
+				.set("hwvirtex", "on")
+				.set("pae", "on")
+				.set("cpus", service.getCPUs())
+				.set("cpuexecutioncap", service.getCPUExecutionCap())
+				// RAM setup
+				.set("memory", service.getRAM())
+				.set("vram", 16)
+				.set("nestedpaging", "on")
+				.set("largepages", "on")
+				// Audio setup (switch it off)
+				.set("audio", "none")
+				// Use high precision event timers instead of legacy
+				.set("hpet", "on"));
 
 		// Clock setup to try and stop drift between host and guest
 		// https://www.virtualbox.org/manual/ch09.html#changetimesync
@@ -374,39 +376,34 @@ public class Virtualbox extends Virtualisation {
 		units.add(new SimpleUnit(service.getLabel() + "_tty0_com_port", service.getLabel() + "_exists",
 				"sudo -u " + user
 					+ " VBoxManage modifyvm " + service.getLabel()
-						+ " --uart1 0x3F8 4",
-				"sudo -u " + user
-					+ " VBoxManage showvminfo " + service.getLabel() + " --machinereadable"
-					+ " | grep ^uart1=",
-				"uart1=\\\"0x03f8,4\\\"", "pass"));
+						+ " --uart1 0x3F8 4;"
+				+ VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.get(service.getLabel(), "uart1"),
+				"0x03f8,4", "pass"));
 
 		units.add(new SimpleUnit(service.getLabel() + "_tty0_socket", service.getLabel() + "_tty0_com_port",
 				"sudo -u " + user
 					+ " VBoxManage modifyvm " + service.getLabel()
-						+ " --uartmode1 server " + ttySocketDir + "/vboxttyS0",
-				"sudo -u " + user
-					+ " VBoxManage showvminfo " + service.getLabel()
-						+ " --machinereadable"
-					+ " | grep ^uartmode1=",
-				"uartmode1=\\\"server," + ttySocketDir + "/vboxttyS0\\\"", "pass"));
+						+ " --uartmode1 server " + ttySocketDir + "/vboxttyS0;"
+				+ VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.get(service.getLabel(), "uartmode1"),
+				"server," + ttySocketDir + "/vboxttyS0", "pass"));
 
 		units.add(new SimpleUnit(service.getLabel() + "_tty1_com_port", service.getLabel() + "_exists",
 				"sudo -u " + user
 					+ " VBoxManage modifyvm " + service.getLabel()
-						+ " --uart2 0x2F8 3",
-				"sudo -u " + user
-					+ " VBoxManage showvminfo " + service.getLabel() + " --machinereadable"
-					+ " | grep ^uart2=",
-				"uart2=\\\"0x02f8,3\\\"", "pass"));
+						+ " --uart2 0x2F8 3;"
+				+ VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.get(service.getLabel(), "uart2"),
+				"0x02f8,3", "pass"));
 
 		units.add(new SimpleUnit(service.getLabel() + "_tty1_socket", service.getLabel() + "_tty1_com_port",
 				"sudo -u " + user
 					+ " VBoxManage modifyvm " + service.getLabel()
-					+ " --uartmode2 server " + ttySocketDir	+ "/vboxttyS1",
-				"sudo -u " + user
-					+ " VBoxManage showvminfo " + service.getLabel() + " --machinereadable"
-					+ " | grep ^uartmode2=",
-				"uartmode2=\\\"server," + ttySocketDir + "/vboxttyS1\\\"", "pass"));
+					+ " --uartmode2 server " + ttySocketDir	+ "/vboxttyS1;"
+				+ VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.get(service.getLabel(), "uartmode2"),
+				"server," + ttySocketDir + "/vboxttyS1", "pass"));
 
 		//TODO: add running vbox process string
 		getServerModel().getUserModel().addUsername(user);
@@ -426,25 +423,13 @@ public class Virtualbox extends Virtualisation {
 	 * @return
 	 */
 	protected SimpleUnit modifyVm(ServiceModel service, String setting, String value, String errorMsg, String prerequisite) {
-
-		String check = "";
-
-		// Integers aren't quoted...
-		if (value.matches("-?(0|[1-9]\\d*)")) {
-			check = setting + "=" + value;
-		}
-		else {
-			check = setting + "=\\\"" + value + "\\\"";
-		}
-
 		return new SimpleUnit(service + "_" + setting + "_" + value, prerequisite,
 				"sudo -u " + getServiceUser(service)
 					+ " VBoxManage modifyvm " + service.getLabel()
-						+ " --" + setting + " " + value,
-				"sudo -u " + getServiceUser(service)
-					+ " VBoxManage showvminfo " + service + " --machinereadable"
-					+ " | grep ^" + setting + "=",
-				check, "pass", errorMsg);
+						+ " --" + setting + " " + value + ";"
+				+ VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.get(service.getLabel(), setting),
+				value, "pass", errorMsg);
 	}
 
 	protected SimpleUnit modifyVm(ServiceModel service, String setting, String value, String errorMsg) {
@@ -477,11 +462,10 @@ public class Virtualbox extends Virtualisation {
 
 		return new SimpleUnit(service.getLabel() + "_" + property.replaceAll("-", "_") + "_" + value, prerequisite,
 				"sudo -u " + getServiceUser(service)
-					+ " VBoxManage guestproperty set " + service.getLabel() + " \"/VirtualBox/GuestAdd/VBoxService/--" + property + "\" " + value,
-				"sudo -u " + getServiceUser(service)
-					+ " VBoxManage guestproperty enumerate " + service.getLabel()
-					+ " | grep \"Name: /VirtualBox/GuestAdd/VBoxService/--" + property + ", value: " + value + "\"",
-				"", "fail", errorMsg);
+					+ " VBoxManage guestproperty set " + service.getLabel() + " \"/VirtualBox/GuestAdd/VBoxService/--" + property + "\" " + value + ";"
+				+ VMSnapshotUnit.refresh(service.getLabel()),
+				VMSnapshotUnit.getGuestProperty(service.getLabel(), "/VirtualBox/GuestAdd/VBoxService/--" + property),
+				value, "pass", errorMsg);
 	}
 
 	protected SimpleUnit guestPropertySet(ServiceModel service, String property, Integer value, String errorMsg) {
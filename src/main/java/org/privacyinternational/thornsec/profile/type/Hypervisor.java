@@ -9,11 +9,13 @@ package org.privacyinternational.thornsec.profile.type;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 import javax.json.stream.JsonParsingException;
 import org.privacyinternational.thornsec.core.data.machine.AMachineData.MachineType;
+import org.privacyinternational.thornsec.core.data.machine.ServerData.GuestOS;
 import org.privacyinternational.thornsec.core.data.machine.configuration.NetworkInterfaceData;
 import org.privacyinternational.thornsec.core.data.machine.configuration.NetworkInterfaceData.Direction;
 import org.privacyinternational.thornsec.core.data.machine.configuration.DiskData.Medium;
@@ -27,6 +29,8 @@ import org.privacyinternational.thornsec.core.model.machine.ServiceModel;
 import org.privacyinternational.thornsec.core.model.machine.configuration.disks.ADiskModel;
 import org.privacyinternational.thornsec.core.model.machine.configuration.networking.NetworkInterfaceModel;
 import org.privacyinternational.thornsec.core.profile.AStructuredProfile;
+import org.privacyinternational.thornsec.core.unit.JobGroupUnit;
+import org.privacyinternational.thornsec.core.unit.JobWaitUnit;
 import org.privacyinternational.thornsec.core.unit.SimpleUnit;
 import org.privacyinternational.thornsec.core.unit.fs.DirUnit;
 import org.privacyinternational.thornsec.core.unit.fs.FileChecksumUnit;
@@ -130,10 +134,32 @@ public class Hypervisor extends AStructuredProfile {
 	public Collection<IUnit> getLiveConfig() throws AThornSecException {
 		final Collection<IUnit> units = new ArrayList<>();
 
-		getServices().forEach(service -> {
-			units.addAll(service.getUserPasswordUnits());
-			units.addAll(virtualbox.buildVM(service));
-		});
+		// If we're using golden images, install each OS we need once, up
+		// front, so every service's boot disk can be cloned from it rather
+		// than installed from scratch
+		if (getServerModel().useGoldenImages()) {
+			final Set<GuestOS> oses = getServices().stream()
+					.map(ServiceModel::getOS)
+					.collect(Collectors.toCollection(LinkedHashSet::new));
+
+			for (GuestOS os : oses) {
+				units.addAll(virtualbox.buildGoldenImage(os));
+			}
+		}
+
+		// Each service's VM is independent of the others (and building them
+		// is mostly waiting on disk), so build them alongside each other, one
+		// per physical CPU. getCPUs() is our default for our services, so is
+		// only a fallback here
+		final Integer maxJobs = getServerModel().getCPUCapacity().orElse(getServerModel().getCPUs());
+		for (ServiceModel service : getServices()) {
+			final Collection<IUnit> vm = new ArrayList<>();
+			vm.addAll(service.getUserPasswordUnits());
+			vm.addAll(virtualbox.buildVM(service));
+
+			units.add(new JobGroupUnit(service.getLabel() + "_vm", vm, maxJobs));
+		}
+		units.add(new JobWaitUnit("vms"));
 		
 		//units.addAll(this.hypervisor.getLiveConfig());
 		units.addAll(this.scripts.getLiveConfig());
@@ -135,7 +135,7 @@ public class Router extends AMachine {
 		getMachineModel().addNetworkInterface(trunk);
 
 		for (MachineType type : vlans) {
-			if (getNetworkModel().getMachines(type).isEmpty()) {
+			if (getNetworkModel().getMachineCount(type) == 0) {
 				continue;
 			}
 
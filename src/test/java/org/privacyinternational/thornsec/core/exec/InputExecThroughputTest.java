@@ -0,0 +1,106 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.exec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+/**
+ * Compares how fast InputExec pumps a process' output against how we used to
+ * do it - a char at a time, through an unbuffered InputStreamReader.
+ *
+ * Both pumps read the same (audit-looking) output from a real process, into
+ * the same sort of sink FleetExec gives each host.
+ */
+public class InputExecThroughputTest {
+
+	private static final int OUTPUT_SIZE = 16 * 1024 * 1024;
+	private static final int RUNS = 3;
+
+	@Test
+	public void bufferedPumpIsFasterThanCharAtATime() throws Exception {
+		final byte[] expected = pump(InputExec::new);
+		assertArrayEquals(expected, pump(CharAtATime::new));
+
+		final long charAtATime = bestOf(CharAtATime::new);
+		final long buffered = bestOf(InputExec::new);
+
+		System.out.println("InputExec throughput, " + (OUTPUT_SIZE / 1024 / 1024) + "MB, best of " + RUNS + ":");
+		System.out.println("\tchar at a time: " + charAtATime + "ms (" + throughput(charAtATime) + "MB/s)");
+		System.out.println("\tbuffered:       " + buffered + "ms (" + throughput(buffered) + "MB/s)");
+
+		assertTrue("The buffered pump (" + buffered + "ms) should be well ahead of a char at a time ("
+				+ charAtATime + "ms)", buffered * 2 < charAtATime);
+	}
+
+	@FunctionalInterface
+	private interface Pump {
+		Runnable build(InputStream in, OutputStream out);
+	}
+
+	/**
+	 * The way InputExec used to copy output
+	 */
+	private static class CharAtATime implements Runnable {
+		private final InputStreamReader reader;
+		private final OutputStream writer;
+
+		CharAtATime(InputStream stream, OutputStream writer) {
+			this.reader = new InputStreamReader(stream);
+			this.writer = writer;
+		}
+
+		public void run() {
+			try {
+				int c = reader.read();
+				while (c != -1) {
+					writer.write(c);
+					c = reader.read();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private long bestOf(Pump pump) throws Exception {
+		long best = Long.MAX_VALUE;
+
+		for (int run = 0; run < RUNS; run++) {
+			final long start = System.nanoTime();
+			pump(pump);
+			best = Math.min(best, (System.nanoTime() - start) / 1000000);
+		}
+
+		return Math.max(1, best);
+	}
+
+	private byte[] pump(Pump pump) throws Exception {
+		final Process proc = new ProcessBuilder("bash", "-c",
+				"yes 'ok_some_unit_audit() { dpkg-query --status some-package | grep -q \"Status: install ok\"; }'"
+				+ " | head -c " + OUTPUT_SIZE).start();
+		final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+		pump.build(proc.getInputStream(), sink).run();
+		proc.waitFor();
+
+		return sink.toByteArray();
+	}
+
+	private long throughput(long millis) {
+		return (OUTPUT_SIZE / 1024 / 1024) * 1000L / millis;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.core.unit.fs;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks that building (and emitting) a FileUnit scales linearly with the
+ * number of lines in it, up to 100k lines.
+ */
+public class FileUnitScalingTest {
+
+	private static final int RUNS = 3;
+
+	@Test
+	public void scalesLinearlyTo100kLines() throws Exception {
+		// Warm up
+		bestOf(10000);
+
+		final long tenK = bestOf(10000);
+		final long hundredK = bestOf(100000);
+
+		System.out.println("FileUnit build and emit, best of " + RUNS + ":");
+		System.out.println("\t10k lines:  " + tenK + "ms");
+		System.out.println("\t100k lines: " + hundredK + "ms");
+
+		// Ten times the lines should take about ten times as long. Quadratic
+		// would be a hundred.
+		assertTrue("100k lines (" + hundredK + "ms) took more than 30x as long as 10k lines (" + tenK + "ms)",
+				hundredK < 30 * tenK);
+	}
+
+	private long bestOf(int lines) throws Exception {
+		long best = Long.MAX_VALUE;
+
+		for (int run = 0; run < RUNS; run++) {
+			final long start = System.nanoTime();
+			build(lines);
+			best = Math.min(best, (System.nanoTime() - start) / 1000000);
+		}
+
+		return Math.max(1, best);
+	}
+
+	private int build(int lines) throws Exception {
+		final FileUnit file = new FileUnit("scaling", "proceed", "/etc/scaling");
+
+		for (int line = 0; line < lines; line++) {
+			file.appendLine("ACCEPT\tlan:10.0." + (line / 256) % 256 + "." + line % 256 + "\tInternet\ttcp\t443");
+		}
+
+		final StringBuilder out = new StringBuilder();
+		file.emitAudit(out, false);
+		file.emitConfig(out);
+
+		return out.length();
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.profile.firewall.router;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonWriter;
+
+import org.junit.Test;
+import org.privacyinternational.thornsec.core.data.JsonLoader;
+import org.privacyinternational.thornsec.core.iface.IUnit;
+import org.privacyinternational.thornsec.core.model.machine.ServerModel;
+import org.privacyinternational.thornsec.core.model.network.ThornsecModel;
+import org.privacyinternational.thornsec.core.unit.fs.FileUnit;
+
+/**
+ * Builds the same fixture network's router with each firewall backend, and
+ * compares the files it writes out against known-good copies.
+ *
+ * The files are compared as they'll end up on disk, i.e. after being passed
+ * through the shell, so anything we've failed to escape shows up here.
+ *
+ * Run with -Dthornsec.golden.update=true to rewrite the golden files.
+ */
+public class FirewallGoldenTest {
+
+	private static final Path FIXTURE = Paths.get("src/test/resources/firewall/network.json");
+	private static final Path GOLDEN = Paths.get("src/test/resources/firewall/golden");
+
+	@Test
+	public void shorewallMatchesGolden() throws Exception {
+		assertGolden("shorewall", render(buildRouter("shorewall")));
+	}
+
+	@Test
+	public void nftablesMatchesGolden() throws Exception {
+		assertGolden("nftables", render(buildRouter("nftables")));
+	}
+
+	@Test
+	public void nftablesEgressScriptIsValidBash() throws Exception {
+		final String script = render(buildRouter("nftables")).get("nftables_egress_script");
+
+		assertTrue("No Egress hostnames made it into the fixture's ruleset", script != null);
+		assertEquals("", bash("bash -n <<'EOF'\n" + script + "EOF\n"));
+	}
+
+	/**
+	 * Build our fixture network, with its router using the given backend
+	 *
+	 * @return the router's firewall's files
+	 */
+	private Collection<IUnit> buildRouter(String backend) throws Exception {
+		final JsonObject fixture = JsonLoader.read(FIXTURE);
+		final JsonObject network = fixture.getJsonObject("fixture");
+		final JsonObject servers = network.getJsonObject("servers");
+		final JsonObject router = Json.createObjectBuilder(servers.getJsonObject("router"))
+				.add("firewall_backend", backend)
+				.build();
+
+		final JsonObject json = Json.createObjectBuilder()
+				.add("fixture", Json.createObjectBuilder(network)
+						.add("servers", Json.createObjectBuilder(servers).add("router", router)))
+				.build();
+
+		final Path config = Files.createTempFile("thornsec-" + backend, ".json");
+		try {
+			final StringWriter text = new StringWriter();
+			try (JsonWriter writer = Json.createWriter(text)) {
+				writer.writeObject(json);
+			}
+			Files.writeString(config, text.toString());
+
+			final ThornsecModel model = new ThornsecModel();
+			model.read(config.toString());
+			model.init();
+
+			return ((ServerModel) model.getNetwork("fixture").getMachineModel("router"))
+					.getFirewall()
+					.getLiveConfig();
+		}
+		finally {
+			Files.delete(config);
+		}
+	}
+
+	/**
+	 * @return each FileUnit's contents, as the shell would write them
+	 */
+	private Map<String, String> render(Collection<IUnit> units) throws Exception {
+		final Map<String, String> files = new LinkedHashMap<>();
+
+		for (IUnit unit : units) {
+			if (!(unit instanceof FileUnit)) {
+				continue;
+			}
+
+			final String label = unit.getLabel();
+			final String audit = ((FileUnit) unit).genAudit(false);
+			final String expected = audit.substring(0, audit.indexOf("\n" + label + "_audit() {"));
+
+			files.put(label, bash(expected + "\nprintf '%s\\n' \"${" + label + "_expected}\"\n"));
+		}
+
+		return files;
+	}
+
+	private void assertGolden(String backend, Map<String, String> files) throws IOException {
+		final Path dir = GOLDEN.resolve(backend);
+
+		if (Boolean.getBoolean("thornsec.golden.update")) {
+			Files.createDirectories(dir);
+			for (Map.Entry<String, String> file : files.entrySet()) {
+				Files.writeString(dir.resolve(file.getKey()), file.getValue());
+			}
+		}
+
+		for (Map.Entry<String, String> file : files.entrySet()) {
+			assertEquals(backend + "'s " + file.getKey() + " has changed",
+					Files.readString(dir.resolve(file.getKey())), file.getValue());
+		}
+	}
+
+	private static String bash(String script) throws IOException, InterruptedException {
+		final Process bash = new ProcessBuilder("bash", "-c", script)
+				.redirectErrorStream(true)
+				.start();
+
+		final String out = new String(bash.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+		bash.waitFor();
+
+		return out;
+	}
+}
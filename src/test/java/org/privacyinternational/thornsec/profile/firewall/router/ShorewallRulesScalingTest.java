@@ -0,0 +1,121 @@
+/*
+ * This code is part of the ThornSec project.
+ *
+ * To learn more, please head to its GitHub repo: @privacyint
+ *
+ * Pull requests encouraged.
+ */
+package org.privacyinternational.thornsec.profile.firewall.router;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonWriter;
+
+import org.junit.Test;
+import org.privacyinternational.thornsec.core.data.JsonLoader;
+import org.privacyinternational.thornsec.core.iface.IUnit;
+import org.privacyinternational.thornsec.core.model.machine.ServerModel;
+import org.privacyinternational.thornsec.core.model.network.ThornsecModel;
+import org.privacyinternational.thornsec.core.unit.fs.FileUnit;
+import org.privacyinternational.thornsec.profile.firewall.AFirewallProfile;
+
+/**
+ * Times how long our router takes to generate its Shorewall rules for a
+ * network with 10k TrafficRules on it.
+ */
+public class ShorewallRulesScalingTest {
+
+	private static final Path FIXTURE = Paths.get("src/test/resources/firewall/network.json");
+
+	private static final int SERVERS = 500;
+	private static final int SOURCES = 20;
+	private static final int RUNS = 3;
+
+	@Test
+	public void generates10kRulesInUnderASecond() throws Exception {
+		final AFirewallProfile firewall = buildRouter();
+
+		// Warm up, and make sure we've actually got as many rules as we think
+		final int rules = countRules(firewall.getLiveConfig());
+		assertTrue("Only " + rules + " rules were generated", rules >= SERVERS * SOURCES);
+
+		long best = Long.MAX_VALUE;
+		for (int run = 0; run < RUNS; run++) {
+			final long start = System.nanoTime();
+			firewall.getLiveConfig();
+			best = Math.min(best, (System.nanoTime() - start) / 1000000);
+		}
+
+		System.out.println("Shorewall rules for " + (SERVERS * SOURCES) + " TrafficRules (" + rules
+				+ " lines), best of " + RUNS + ": " + best + "ms");
+
+		assertTrue("Generating " + rules + " rules took " + best + "ms", best < 1000);
+	}
+
+	/**
+	 * Our fixture network, with SERVERS web servers, each allowing ingress
+	 * from SOURCES different addresses
+	 */
+	private AFirewallProfile buildRouter() throws Exception {
+		final JsonObject network = JsonLoader.read(FIXTURE).getJsonObject("fixture");
+		final JsonObject web = network.getJsonObject("servers").getJsonObject("web");
+		final JsonObjectBuilder servers = Json.createObjectBuilder(network.getJsonObject("servers"));
+
+		for (int server = 0; server < SERVERS; server++) {
+			final JsonArrayBuilder sources = Json.createArrayBuilder();
+			for (int source = 0; source < SOURCES; source++) {
+				sources.add("198." + (server / 256) + "." + (server % 256) + "." + source);
+			}
+
+			servers.add("web" + server, Json.createObjectBuilder(web)
+					.add("network_interfaces", Json.createObjectBuilder()
+							.add("lan", Json.createArrayBuilder()
+									.add(Json.createObjectBuilder()
+											.add("iface", "eth0")
+											.add("mac", String.format("de:ad:be:ee:%02x:%02x", server / 256, server % 256)))))
+					.add("firewall", Json.createObjectBuilder(web.getJsonObject("firewall"))
+							.add("allow_ingress_from", sources)));
+		}
+
+		final JsonObject json = Json.createObjectBuilder()
+				.add("fixture", Json.createObjectBuilder(network).add("servers", servers))
+				.build();
+
+		final Path config = Files.createTempFile("thornsec-scaling", ".json");
+		try {
+			final StringWriter text = new StringWriter();
+			try (JsonWriter writer = Json.createWriter(text)) {
+				writer.writeObject(json);
+			}
+			Files.writeString(config, text.toString());
+
+			final ThornsecModel model = new ThornsecModel();
+			model.read(config.toString());
+			model.init();
+
+			return ((ServerModel) model.getNetwork("fixture").getMachineModel("router")).getFirewall();
+		}
+		finally {
+			Files.delete(config);
+		}
+	}
+
+	private int countRules(Collection<IUnit> units) {
+		for (IUnit unit : units) {
+			if (unit.getLabel().equals("shorewall_rules")) {
+				return String.join("\n", ((FileUnit) unit).getLines()).split("\n").length;
+			}
+		}
+
+		return 0;
+	}
+}